@@ -29,17 +29,33 @@ import gpframework.algorithms.Algorithm;
 import gpframework.algorithms.components.MutationFactory;
 import gpframework.algorithms.components.Selection;
 import gpframework.common.Utils;
+import gpframework.common.WorkerThreadFactory;
 import gpframework.common.exceptions.ParameterException;
 import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.Landscape;
+import gpframework.indicators.LandscapeEnumerator;
+import gpframework.indicators.LandscapeFitnessFunction;
+import gpframework.indicators.MultiFidelityFitness;
 import gpframework.problems.Problem;
 import gpframework.program.FunctionFactory;
 import gpframework.program.Program;
 import gpframework.program.ProgramFactory;
+import gpframework.program.Term;
 import gpframework.program.TerminalFactory;
+import java.io.*;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.cli.*;
 
 /**
@@ -105,13 +121,45 @@ public class RunExperiment
         long seed = System.currentTimeMillis();
         Utils.random = new Random(seed);
         
-        // Set the problem size
-        int problemSize = Integer.parseInt(cmd.getOptionValue("n"));
-        
         // Set debug mode and cluster mode
         Utils.debug = cmd.hasOption("d");
         RunExperiment.cluster = cmd.hasOption("c");
         
+        // One run by default, cluster mode runs the repetitions on all the processors
+        int repetitions = cmd.hasOption("r") ? Integer.parseInt(cmd.getOptionValue("r")) : 1;
+        int parallelism = cmd.hasOption("p") ? Integer.parseInt(cmd.getOptionValue("p")) 
+                : (cluster ? Runtime.getRuntime().availableProcessors() : 1);
+        if (repetitions <= 0 || parallelism <= 0)
+            throw new ParameterException("Parameters repetitions and parallelism must be positive!");
+        
+        // Independent runs in the same virtual machine, which share the compiled code
+        ExecutorService runners = Executors.newFixedThreadPool(Math.min(repetitions, parallelism), new WorkerThreadFactory("repetition"));
+        try {
+            List<Future<Map<String, Object>>> runs = new ArrayList<Future<Map<String, Object>>>(repetitions);
+            for (int r = 0; r < repetitions; r++)
+                runs.add(runners.submit(new Repetition(cmd, options, r, seed + r)));
+            
+            for (Future<Map<String, Object>> run : runs)
+                Utils.await(run);
+        } finally {
+            runners.shutdownNow();
+        }
+    }
+    
+    /**
+     * Performs a single run of the experiment on the current thread.
+     * 
+     * @param cmd command line options
+     * @param options available options
+     * @param seed seed of the random generator of the run
+     * @return the setup and the results of the run
+     * @throws ParameterException if needed parameters are not in place
+     */
+    public static Map<String, Object> runExperiment(CommandLine cmd, Options options, long seed) throws ParameterException
+    {
+        // Set the problem size
+        int problemSize = Integer.parseInt(cmd.getOptionValue("n"));
+        
         // Initialize fitness function and some factories
         FitnessFunction fitnessFunction = fromName(cmd.getOptionValue("f"), problemSize);
         MutationFactory mutationFactory = fromName(cmd.getOptionValue("mf"));
@@ -120,6 +168,20 @@ public class RunExperiment
         TerminalFactory terminalFactory = fromName(cmd.getOptionValue("tf"), problemSize);
         ProgramFactory programFactory = fromName(cmd.getOptionValue("pf"), functionFactory, terminalFactory);
         
+        // Look up fitness values in the landscape of the fitness function
+        if (cmd.hasOption("l"))
+            fitnessFunction = landscapeFunction(cmd.getOptionValue("l"), programFactory, fitnessFunction);
+        
+        // Screen offspring with a cheap proxy of the fitness function
+        if (cmd.hasOption("px"))
+        {
+            FitnessFunction proxy = fromName(cmd.getOptionValue("px"), problemSize);
+            MultiFidelityFitness multiFidelity = new MultiFidelityFitness(fitnessFunction, proxy);
+            if (cmd.hasOption("pc"))
+                multiFidelity.setProxyCost(Double.parseDouble(cmd.getOptionValue("pc")));
+            fitnessFunction = multiFidelity;
+        }
+        
         // Initialize algorithm
         Algorithm algorithm = fromName(cmd.getOptionValue("a"), mutationFactory, selectionCriterion);
         algorithm.setParameter("evaluationsBudget", cmd.getOptionValue("e"));
@@ -145,7 +207,7 @@ public class RunExperiment
 
         // Copy results
         entry.put("bestProgram", solution.toString());
-        entry.put("bestSolution", fitnessFunction.normalize(solution));
+        entry.put("bestSolution", fitnessFunction.cachedPhenotype(solution));
         
         // Copy all statistics
         entry.putAll(algorithm.getStatistics());
@@ -153,6 +215,75 @@ public class RunExperiment
         Utils.debug("Maximum encountered population size: " + algorithm.getStatistics().get("maxPopulationSizeToCompleteFront") );
         Utils.debug("Maximum encountered tree size: " + algorithm.getStatistics().get("maxProgramComplexityToCompleteFront") );
         Utils.debug("Solution complexity: " + solution.complexity() + "/" + (2*problemSize-1));
+        
+        return entry;
+    }
+    
+    /**
+     * Run of the experiment on a worker thread, with its own random stream and
+     * node IDs, whose result entry is printed as soon as it is complete.
+     */
+    private static class Repetition implements Callable<Map<String, Object>>
+    {
+        /**
+         * Command line options.
+         */
+        private CommandLine cmd;
+        
+        /**
+         * Available options.
+         */
+        private Options options;
+        
+        /**
+         * Index of the run.
+         */
+        private int repetition;
+        
+        /**
+         * Seed of the random stream of the run.
+         */
+        private long seed;
+        
+        /**
+         * Constructor.
+         * 
+         * @param cmd command line options
+         * @param options available options
+         * @param repetition index of the run
+         * @param seed seed of the random stream of the run
+         */
+        public Repetition(CommandLine cmd, Options options, int repetition, long seed)
+        {
+            this.cmd = cmd;
+            this.options = options;
+            this.repetition = repetition;
+            this.seed = seed;
+        }
+        
+        @Override
+        public Map<String, Object> call() throws ParameterException
+        {
+            // Worker threads created by the run inherit its node IDs
+            Utils.setStream(new Random(seed));
+            Term.setOrdinals(new AtomicInteger());
+            try {
+                Map<String, Object> entry = runExperiment(cmd, options, seed);
+                entry.put("repetition", repetition);
+                
+                // Stream the entries as the runs complete
+                Map<String, Object> printed = new TreeMap<String, Object>(entry);
+                printed.put("bestSolution", Arrays.toString((int[]) entry.get("bestSolution")));
+                synchronized (System.out)
+                {
+                    System.out.println(printed);
+                }
+                return entry;
+            } finally {
+                Utils.setStream(null);
+                Term.setOrdinals(null);
+            }
+        }
     }
     	
     /**
@@ -190,6 +321,7 @@ public class RunExperiment
             "gpframework.algorithms",
             "gpframework.algorithms.components",
             "gpframework.algorithms.components.mutations",
+            "gpframework.algorithms.components.crossovers",
             "gpframework.algorithms.components.selections",
             "gpframework.algorithms.components.selections",
             "gpframework.indicators",
@@ -221,6 +353,59 @@ public class RunExperiment
         return t;
     }
     
+    /**
+     * Loads the landscape of a fitness function from a file, or computes it 
+     * (on all the available processors) and stores it if the file is missing.
+     * Concurrent runs wait for each other, so that the file is only computed once.
+     * Landscapes of random weighted fitness functions depend on the weights 
+     * generated by the terminal factory, files computed with other weights are
+     * rejected.
+     * 
+     * @param fileName name of the landscape file
+     * @param programFactory factory generating the programs of the problem
+     * @param fitnessFunction fitness function of the problem
+     * @return a fitness function looking up the landscape
+     */
+    private synchronized static FitnessFunction landscapeFunction(String fileName, ProgramFactory programFactory, FitnessFunction fitnessFunction)
+    {
+        File file = new File(fileName);
+        Landscape landscape;
+        
+        // Share the weights of the terminals with the fitness function
+        Problem problem = new Problem(programFactory, fitnessFunction);
+        
+        try
+        {
+            if (file.exists())
+            {
+                InputStream in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    landscape = Landscape.read(in);
+                } finally {
+                    in.close();
+                }
+            }
+            else
+            {
+                LandscapeEnumerator enumerator = new LandscapeEnumerator(problem, Runtime.getRuntime().availableProcessors());
+                landscape = enumerator.enumerate();
+                
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+                try {
+                    landscape.write(out);
+                } finally {
+                    out.close();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Can't access landscape file " + fileName, e);
+        }
+        
+        return new LandscapeFitnessFunction(fitnessFunction, landscape);
+    }
+    
     /**
      * Generates a list of command line options for this program.
      * @param options reference to options.
@@ -244,7 +429,22 @@ public class RunExperiment
         opt = new Option("d", "debug", false, "enables debug messages");
         options.addOption(opt);
         
-        opt = new Option("c", "cluster", false, "enables cluster mode");
+        opt = new Option("c", "cluster", false, "enables cluster mode, i.e. runs the repetitions on all the available processors by default");
+        options.addOption(opt);
+        
+        opt = new Option("r", "repetitions", true, "number of independent runs of the experiment in this virtual machine, e.g. 100 (def. 1)");
+        options.addOption(opt);
+        
+        opt = new Option("p", "parallelism", true, "number of runs executed concurrently, e.g. 8 (def. 1, or the available processors in cluster mode)");
+        options.addOption(opt);
+        
+        opt = new Option("px", "proxyFunction", true, "cheap fitness function screening offspring before the exact one (SMOGP), e.g. RunSortednessFunction");
+        options.addOption(opt);
+        
+        opt = new Option("pc", "proxyCost", true, "cost of a proxy evaluation charged to the evaluations budget, as a fraction of an exact one, e.g. 0.1 (def. 1)");
+        options.addOption(opt);
+        
+        opt = new Option("l", "landscape", true, "file with the landscape of the fitness function (computed if missing), up to n = 12, n = 9 for signed ORDER phenotypes");
         options.addOption(opt);
         
         // Problem options
@@ -265,7 +465,7 @@ public class RunExperiment
         options.addOption(opt);
         
         // Algorithm options
-        opt = new Option("a", "Algorithm", true, "algorithm to use, e.g. Algorithm or SMOGP");
+        opt = new Option("a", "Algorithm", true, "algorithm to use, e.g. Algorithm, SMOGP, IslandGP or MuPlusLambdaGP");
         opt.setRequired(true);
         options.addOption(opt);
         
@@ -273,7 +473,7 @@ public class RunExperiment
         opt.setRequired(true);
         options.addOption(opt);
         
-        opt = new Option("mf", "MutationFactory", true, "factory to generate mutations, e.g. SingleMutationFactory, PoissonMutationFactory");
+        opt = new Option("mf", "MutationFactory", true, "factory to generate mutations, e.g. SingleMutationFactory, PoissonMutationFactory, AdaptiveMutationFactory");
         opt.setRequired(true);
         options.addOption(opt);
         
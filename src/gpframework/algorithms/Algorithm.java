@@ -25,19 +25,30 @@
 
 package gpframework.algorithms;
 
+import gpframework.algorithms.components.EvaluationService;
+import gpframework.algorithms.components.FitnessCache;
 import gpframework.algorithms.components.Mutation;
 import gpframework.algorithms.components.MutationFactory;
 import gpframework.algorithms.components.Population;
 import gpframework.algorithms.components.Selection;
+import gpframework.algorithms.components.selections.SMOGPSelection;
 import gpframework.common.Configurable;
 import gpframework.common.Utils;
+import gpframework.common.WorkerThreadFactory;
 import gpframework.common.exceptions.ArityException;
 import gpframework.common.exceptions.MaximumEvaluationsExceeded;
 import gpframework.common.exceptions.ParameterException;
+import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.FitnessProfile;
+import gpframework.indicators.MultiFidelityFitness;
 import gpframework.problems.Problem;
 import gpframework.program.Program;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Algorithm whose aim is to optimize the structure of the program. Evolves a
@@ -81,6 +92,12 @@ public class Algorithm extends Configurable
     /** Maximum program complexity obtained during optimization.  */
     protected long maximumProgramComplexity;
     
+    /** Workers breeding the offspring in parallel, null if generations are sequential. */
+    protected ExecutorService generationWorkers;
+    
+    /** Number of chunks the population is split into by parallel generations. */
+    protected int generationChunks;
+    
     /**
      * Default constructor
      * 
@@ -113,7 +130,15 @@ public class Algorithm extends Configurable
         
         // Run algorithm
         timeStarted = System.currentTimeMillis();
-        Program solution = run(problem);
+        Program solution;
+        try {
+            solution = run(problem);
+        } finally {
+            if (selectionCriterion.getEvaluationService() != null)
+                selectionCriterion.getEvaluationService().shutdown();
+            if (generationWorkers != null)
+                generationWorkers.shutdownNow();
+        }
         
         return solution;
     }
@@ -132,11 +157,42 @@ public class Algorithm extends Configurable
         populationSize = getIntegerParameter("populationSize");
         
         // Get a random solution set
-        population = new Population(problem);
-        getPopulation().initialize(populationSize);
+        population = createPopulation(problem);
                 
+        // Off-heap evaluation of very large problems is disabled by default
+        if (problem.hasParameter("largeScale"))
+            problem.getFitnessFunction().setLargeScale(problem.getBooleanParameter("largeScale"));
+        
         // Setup the selection criterion using the fitness function
-        selectionCriterion.setFitnessFunction(problem.getFitnessFunction(), evaluationsBudget);  
+        configure(selectionCriterion, problem.getFitnessFunction());
+        
+        // Evaluations are not timed by default
+        if (hasParameter("profiling") && getBooleanParameter("profiling"))
+            problem.getFitnessFunction().setProfile(new FitnessProfile());
+        else
+            problem.getFitnessFunction().setProfile(null);
+        
+        // Offspring are evaluated sequentially by default
+        if (hasParameter("evaluationThreads"))
+        {
+            int threads = getIntegerParameter("evaluationThreads");
+            if (threads <= 0)
+                throw new ParameterException("Parameter evaluationThreads must be positive!");
+            selectionCriterion.setEvaluationService(new EvaluationService(problem.getFitnessFunction(), threads));
+        }
+        
+        // Generations are sequential by default, parallel ones also evaluate in parallel
+        generationWorkers = null;
+        if (hasParameter("generationWorkers"))
+        {
+            generationChunks = getIntegerParameter("generationWorkers");
+            if (generationChunks <= 0)
+                throw new ParameterException("Parameter generationWorkers must be positive!");
+            generationWorkers = Executors.newFixedThreadPool(generationChunks, new WorkerThreadFactory("generation"));
+            
+            if (selectionCriterion.getEvaluationService() == null)
+                selectionCriterion.setEvaluationService(new EvaluationService(problem.getFitnessFunction(), generationChunks));
+        }
         
         // Set reference to the problem
         this.problem = problem;
@@ -148,6 +204,57 @@ public class Algorithm extends Configurable
     
     }
 
+    /**
+     * Builds the initial population, a random solution set of populationSize
+     * individuals.
+     * 
+     * @param problem problem to solve
+     * @return the initial population
+     */
+    protected Population createPopulation(Problem problem)
+    {
+        Population initial = new Population(problem);
+        initial.initialize(populationSize);
+        return initial;
+    }
+
+    /**
+     * Sets up a selection criterion with a fitness function, the evaluations
+     * budget and the evaluation options of the algorithm.
+     * 
+     * @param selection selection criterion to set up
+     * @param fitnessFunction fitness function used by the selection criterion
+     * @throws ParameterException if a parameter has an invalid value
+     */
+    protected void configure(Selection selection, FitnessFunction fitnessFunction) throws ParameterException
+    {
+        // Only the selection of SMO-GP screens offspring with a proxy
+        if (fitnessFunction instanceof MultiFidelityFitness && !(selection instanceof SMOGPSelection))
+            throw new ParameterException("A fitness function with a proxy requires SMOGP or AsyncSMOGP!");
+        
+        selection.setFitnessFunction(fitnessFunction, evaluationsBudget);  
+        
+        // Incremental evaluation is enabled by default, verification is not
+        selection.setDeltaEvaluation(
+                !hasParameter("deltaEvaluation") || getBooleanParameter("deltaEvaluation"),
+                hasParameter("deltaVerification") && getBooleanParameter("deltaVerification"));
+        selection.setEarlyExitComparison(
+                !hasParameter("earlyExitComparison") || getBooleanParameter("earlyExitComparison"));
+        
+        // Duplicate offspring count as evaluations by default
+        selection.setDuplicateSkipping(hasParameter("duplicateSkipping") && getBooleanParameter("duplicateSkipping"));
+        
+        // Fitness cache is disabled by default, hits count as evaluations by default
+        if (hasParameter("fitnessCacheSize"))
+        {
+            int cacheSize = getIntegerParameter("fitnessCacheSize");
+            if (cacheSize <= 0)
+                throw new ParameterException("Parameter fitnessCacheSize must be positive!");
+            selection.setFitnessCache(new FitnessCache(cacheSize), 
+                    !hasParameter("fitnessCacheCountsHits") || getBooleanParameter("fitnessCacheCountsHits"));
+        }
+    }
+
     /**
      * Main method, updates budgets and statistics, override with care.
      * 
@@ -175,7 +282,7 @@ public class Algorithm extends Configurable
                 if (selectionCriterion.isOptimal(best))
                 {
                     statistics.put("timeToOptimum", System.currentTimeMillis() - timeStarted);
-                    statistics.put("evaluationsUsedToOptimum", evaluationsBudget - selectionCriterion.evaluationsLeft());
+                    statistics.put("evaluationsUsedToOptimum", evaluationsUsed());
                     statistics.put("maxProgramComplexityToOptimum", maximumProgramComplexity);
                     break;
                 }
@@ -193,11 +300,63 @@ public class Algorithm extends Configurable
             Utils.debug("Time budget exhausted!");
         }
         
-        statistics.put("evaluationsUsed", evaluationsBudget - selectionCriterion.evaluationsLeft());
+        recordEvaluationStatistics();
         
         return selectionCriterion.getBestIndividual(getPopulation());
         
     }
+    
+    /**
+     * Gets the number of evaluations spent so far.
+     * 
+     * @return the evaluations used from the budget
+     */
+    protected long evaluationsUsed()
+    {
+        return evaluationsBudget - selectionCriterion.evaluationsLeft();
+    }
+    
+    /**
+     * Records the statistics about the evaluations performed in the run.
+     */
+    protected void recordEvaluationStatistics()
+    {
+        statistics.put("evaluationsUsed", evaluationsUsed());
+        statistics.put("deltaEvaluations", selectionCriterion.getDeltaEvaluations());
+        statistics.put("earlyExitComparisons", selectionCriterion.getEarlyExitComparisons());
+        if (hasParameter("duplicateSkipping") && getBooleanParameter("duplicateSkipping"))
+            statistics.put("evaluationsSaved", selectionCriterion.getEvaluationsSaved());
+        
+        EvaluationService evaluationService = selectionCriterion.getEvaluationService();
+        if (evaluationService != null)
+            statistics.put("parallelEvaluations", evaluationService.getEvaluations());
+        
+        FitnessCache fitnessCache = selectionCriterion.getFitnessCache();
+        if (fitnessCache != null)
+        {
+            statistics.put("fitnessCacheHits", fitnessCache.getHits());
+            statistics.put("fitnessCacheMisses", fitnessCache.getMisses());
+            statistics.put("fitnessCacheEvictions", fitnessCache.getEvictions());
+            statistics.put("fitnessCacheHitRate", fitnessCache.getHitRate());
+        }
+        
+        // Trajectory of the parameters of adaptive mutation factories
+        mutationFactory.report(statistics);
+        
+        // Fit the cost model of the evaluations
+        FitnessProfile profile = problem.getFitnessFunction().getProfile();
+        if (profile != null)
+            profile.report(statistics);
+        
+        if (problem.getFitnessFunction() instanceof MultiFidelityFitness)
+        {
+            MultiFidelityFitness fitness = (MultiFidelityFitness) problem.getFitnessFunction();
+            statistics.put("proxyEvaluations", fitness.getProxyEvaluations());
+            statistics.put("proxyEvaluationsCharged", fitness.getProxyCharges());
+            statistics.put("exactEvaluations", fitness.getExactEvaluations());
+            statistics.put("proxyRejections", fitness.getRejections());
+        }
+    }
 
     /**
      * Performs a single generation.
@@ -206,24 +365,61 @@ public class Algorithm extends Configurable
      */
     protected void generation() throws MaximumEvaluationsExceeded 
     {
+        Population offsprings;
+        List<Mutation> mutations;
+        List<Program> parents = new ArrayList<Program>(getPopulation().getIndividuals());
+        
+        if (generationWorkers != null)
+        {
+            // Copy and mutate chunks of the population in parallel
+            mutations = mutationFactory.generate(problem);
+            offsprings = getPopulation().breed(generationWorkers, generationChunks, mutations);
+        }
+        else
+        {
+            // Clone population to produce set of offprings
+            offsprings = new Population(getPopulation());           
 
-        // Clone population to produce set of offprings
-        Population offsprings = new Population(getPopulation());           
-
-        // Select mutations, apply them to offspring
-        for (Mutation m : mutationFactory.generate(problem))
-            offsprings.mutate(m);
+            // Select mutations, apply them to offspring
+            mutations = mutationFactory.generate(problem);
+            for (Mutation m : mutations)
+                offsprings.mutate(m);
+        }
         
-        // HACK: adds the correct evaluation to the printout (doesn't affect
-        // the number of evaluations used, just performs an evaluation in advance)
-        selectionCriterion.evaluate(offsprings.getIndividual(0));
+        // Evaluate offspring in parallel, if enabled, otherwise lazily during
+        // selection (where they can be compared with early exit)
+        selectionCriterion.evaluateAll(offsprings.getIndividuals());
         
         // Select offsprings
         getPopulation().select(selectionCriterion, offsprings);
         
+        // Each offspring competed with its parent
+        for (int i = 0; i < parents.size(); i++)
+            reportOutcome(mutationFactory, mutations, parents.get(i), offsprings.getIndividual(i), 
+                    getPopulation().getIndividual(i) == offsprings.getIndividual(i));
+        
         // Update maximum observed program complexity
         maximumProgramComplexity = Math.max(maximumProgramComplexity, population.getMaximumComplexity());   
     }
+    
+    /**
+     * Reports the outcome of the mutations which produced an offspring to the
+     * factory which generated them. The mutations are successful if the 
+     * offspring was selected, and differs in fitness or complexity from the 
+     * program it competed with.
+     * 
+     * @param factory factory which generated the mutations
+     * @param mutations mutations applied to the offspring
+     * @param reference program the offspring competed with, null if none
+     * @param offspring offspring
+     * @param selected true if the offspring survived selection
+     */
+    protected static void reportOutcome(MutationFactory factory, List<Mutation> mutations, Program reference, Program offspring, boolean selected)
+    {
+        boolean neutral = reference != null && reference.hasCachedFitness() && offspring.hasCachedFitness()
+                && reference.compareTo(offspring) == 0 && reference.complexity() == offspring.complexity();
+        factory.reportOutcome(mutations, selected && !neutral);
+    }
 
 
     /**
@@ -0,0 +1,395 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms;
+
+import gpframework.algorithms.components.FitnessCache;
+import gpframework.algorithms.components.Mutation;
+import gpframework.algorithms.components.MutationFactory;
+import gpframework.algorithms.components.Population;
+import gpframework.algorithms.components.Selection;
+import gpframework.common.Utils;
+import gpframework.common.WorkerThreadFactory;
+import gpframework.common.exceptions.MaximumEvaluationsExceeded;
+import gpframework.common.exceptions.ParameterException;
+import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.MultiFidelityFitness;
+import gpframework.problems.Problem;
+import gpframework.program.Program;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous steady-state SMO-GP: a number of breeder threads repeatedly
+ * pick a random parent from the latest snapshot of the population, mutate and
+ * evaluate a copy of it with their own mutation factory, copy of the fitness
+ * function and random stream, and submit the offspring to a bounded queue.
+ * The calling thread is the only one modifying the population: it selects the
+ * offspring one at a time, in order of arrival, with the same acceptance rule
+ * as SMO-GP, and publishes a new snapshot after each of them. Offspring may
+ * therefore be bred from a population a few selections old, and runs are not
+ * reproducible for a fixed seed. With a MultiFidelityFitness, the breeders 
+ * screen the offspring with its proxy against their snapshot before the exact
+ * evaluation, and only submit the ones which pass.
+ *
+ * Parameters (besides the ones of SMOGP): asyncWorkers, number of breeder
+ * threads (def. the number of available processors). The throughput (offspring
+ * selected per second) is reported together with the number of breeders and of
+ * processors, so that runs with different numbers of breeders show how it
+ * scales with the cores.
+ */
+public class AsyncSMOGP extends SMOGP
+{
+    /**
+     * Breeders, each evolving offspring on its own thread.
+     */
+    protected List<Breeder> breeders;
+
+    /**
+     * Evaluated offspring waiting for selection.
+     */
+    protected BlockingQueue<Program> offsprings;
+
+    /**
+     * Latest snapshot of the population, read by the breeders.
+     */
+    protected volatile List<Program> snapshot;
+
+    /**
+     * Evaluations left, reserved by the breeders before each evaluation.
+     */
+    protected AtomicLong evaluationsLeft = new AtomicLong();
+
+    /**
+     * Number of offspring whose evaluation has been reserved, but which have
+     * not been selected yet.
+     */
+    protected AtomicLong pending = new AtomicLong();
+
+    /**
+     * Set when a breeder can't reserve an evaluation anymore.
+     */
+    protected AtomicBoolean exhausted = new AtomicBoolean();
+
+    /**
+     * Set when all the breeders must stop.
+     */
+    protected AtomicBoolean stopped = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param mutationFactory mutation factory (each breeder uses its own instance)
+     */
+    public AsyncSMOGP(MutationFactory mutationFactory)
+    {
+        super(mutationFactory);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param mutationFactory mutation factory (each breeder uses its own instance)
+     * @param selectionCriterion selection criterion (ignored, as in SMOGP)
+     */
+    public AsyncSMOGP(MutationFactory mutationFactory, Selection selectionCriterion)
+    {
+        super(mutationFactory, selectionCriterion);
+    }
+
+    @Override
+    protected void initialize(Problem problem) throws ParameterException
+    {
+        super.initialize(problem);
+
+        int count = hasParameter("asyncWorkers") ? getIntegerParameter("asyncWorkers") : Runtime.getRuntime().availableProcessors();
+        if (count <= 0)
+            throw new ParameterException("Parameter asyncWorkers must be positive!");
+
+        // Offspring are only compared with evaluated individuals
+        selectionCriterion.completeEvaluations(population);
+        snapshot = Collections.unmodifiableList(new ArrayList<Program>(population.getIndividuals()));
+
+        // The breeders charge the evaluations left to a separate counter, so
+        // the selection of evaluated offspring never runs out of budget
+        evaluationsLeft.set(selectionCriterion.evaluationsLeft());
+        pending.set(0);
+        exhausted.set(false);
+        stopped.set(false);
+
+        offsprings = new ArrayBlockingQueue<Program>(2 * count);
+        breeders = new ArrayList<Breeder>(count);
+        for (int b = 0; b < count; b++)
+            breeders.add(new Breeder(problem, Utils.random().nextLong()));
+    }
+
+    @Override
+    protected long evaluationsUsed()
+    {
+        return evaluationsBudget - evaluationsLeft.get();
+    }
+
+    @Override
+    protected Program run(Problem problem)
+    {
+        optimalFitnessFound = false;
+        statistics.put("evaluationsBudgetExhausted", false);
+        statistics.put("timeBudgetExhausted", false);
+
+        ExecutorService threads = Executors.newFixedThreadPool(breeders.size(), new WorkerThreadFactory("breeder"));
+        try {
+            List<Future<?>> running = new ArrayList<Future<?>>(breeders.size());
+            for (Breeder breeder : breeders)
+                running.add(threads.submit(breeder));
+
+            while ((System.currentTimeMillis() - timeStarted) < timeBudget)
+            {
+                Program o = offsprings.poll(10, TimeUnit.MILLISECONDS);
+                if (o == null)
+                {
+                    // Rethrow the failures of the breeders
+                    for (Future<?> breeder : running)
+                        if (breeder.isDone())
+                            Utils.await(breeder);
+
+                    // Stop once the offspring of the last evaluations are selected
+                    if (exhausted.get() && pending.get() == 0)
+                    {
+                        statistics.put("evaluationsBudgetExhausted", true);
+                        Utils.debug("Maximum iterations exceeded!");
+                        break;
+                    }
+                    continue;
+                }
+
+                // Increase generation counter
+                generation++;
+
+                // Select the offspring and publish the new population
+                Population offspring = new Population(problem);
+                offspring.addIndividual(o);
+                population.select(selectionCriterion, offspring);
+                snapshot = Collections.unmodifiableList(new ArrayList<Program>(population.getIndividuals()));
+                pending.decrementAndGet();
+
+                // Update maximum complexity and population size
+                maximumProgramComplexity = Math.max(maximumProgramComplexity, population.getMaximumComplexity());
+                maximumPopulationSize = Math.max(maximumPopulationSize, population.size());
+
+                // Stop as soon as the Pareto front is complete
+                if (recordProgress())
+                    break;
+            }
+
+        } catch (MaximumEvaluationsExceeded ex) {
+            throw new IllegalStateException("Selection of evaluated offspring exceeded the evaluations budget", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped.set(true);
+            threads.shutdownNow();
+        }
+
+        long elapsed = System.currentTimeMillis() - timeStarted;
+        if (elapsed >= timeBudget)
+        {
+            statistics.put("timeBudgetExhausted", true);
+            Utils.debug("Time budget exhausted! Time used: " + elapsed + " time budget: " + timeBudget);
+        }
+
+        // Throughput, to compare runs with different numbers of breeders
+        statistics.put("asyncWorkers", breeders.size());
+        statistics.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        statistics.put("offspringPerSecond", elapsed == 0 ? 0 : generation * 1000.0 / elapsed);
+
+        recordEvaluationStatistics();
+
+        return selectionCriterion.getBestIndividual(getPopulation());
+    }
+
+    @Override
+    protected void recordEvaluationStatistics()
+    {
+        super.recordEvaluationStatistics();
+
+        // Sum the counters of the breeders
+        long deltaEvaluations = selectionCriterion.getDeltaEvaluations(), earlyExitComparisons = selectionCriterion.getEarlyExitComparisons();
+        long evaluationsSaved = selectionCriterion.getEvaluationsSaved();
+        long hits = 0, misses = 0, evictions = 0;
+        for (Breeder breeder : breeders)
+        {
+            deltaEvaluations += breeder.selection.getDeltaEvaluations();
+            earlyExitComparisons += breeder.selection.getEarlyExitComparisons();
+            evaluationsSaved += breeder.selection.getEvaluationsSaved();
+
+            FitnessCache fitnessCache = breeder.selection.getFitnessCache();
+            if (fitnessCache != null)
+            {
+                hits += fitnessCache.getHits();
+                misses += fitnessCache.getMisses();
+                evictions += fitnessCache.getEvictions();
+            }
+        }
+
+        statistics.put("deltaEvaluations", deltaEvaluations);
+        statistics.put("earlyExitComparisons", earlyExitComparisons);
+        if (statistics.containsKey("evaluationsSaved"))
+            statistics.put("evaluationsSaved", evaluationsSaved);
+        if (statistics.containsKey("fitnessCacheHits"))
+        {
+            statistics.put("fitnessCacheHits", hits);
+            statistics.put("fitnessCacheMisses", misses);
+            statistics.put("fitnessCacheEvictions", evictions);
+            statistics.put("fitnessCacheHitRate", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        }
+    }
+
+    /**
+     * Reserves one evaluation from the evaluations left.
+     *
+     * @return true if the evaluation has been reserved, false if the budget is exhausted
+     */
+    protected boolean reserveEvaluation()
+    {
+        while (true)
+        {
+            long left = evaluationsLeft.get();
+            if (left <= 0)
+                return false;
+            if (evaluationsLeft.compareAndSet(left, left - 1))
+                return true;
+        }
+    }
+
+    /**
+     * Breeds and evaluates offspring on its own thread.
+     */
+    protected class Breeder implements Runnable
+    {
+        /**
+         * Selection criterion of the breeder, only used to evaluate offspring.
+         */
+        protected Selection selection;
+
+        /**
+         * Mutation factory of the breeder.
+         */
+        protected MutationFactory mutationFactory;
+
+        /**
+         * Random stream of the breeder.
+         */
+        protected Random random;
+
+        /**
+         * Fitness function of the breeder, if it screens offspring with a proxy.
+         */
+        protected MultiFidelityFitness multiFidelity;
+
+        /**
+         * Constructor.
+         *
+         * @param problem problem to solve
+         * @param seed seed of the random stream of the breeder
+         * @throws ParameterException if a parameter has an invalid value
+         */
+        public Breeder(Problem problem, long seed) throws ParameterException
+        {
+            this.random = new Random(seed);
+
+            try {
+                selection = selectionCriterion.getClass().newInstance();
+                mutationFactory = AsyncSMOGP.this.mutationFactory.getClass().newInstance();
+            } catch (Exception ex) {
+                throw new IllegalStateException("Can't create the components of a breeder", ex);
+            }
+
+            // Evaluations are charged to the shared counter by reserveEvaluation()
+            FitnessFunction fitnessFunction = problem.getFitnessFunction().copy();
+            configure(selection, fitnessFunction);
+            if (fitnessFunction instanceof MultiFidelityFitness)
+                multiFidelity = (MultiFidelityFitness) fitnessFunction;
+        }
+
+        @Override
+        public void run()
+        {
+            Utils.setStream(random);
+            try {
+                while (!stopped.get())
+                {
+                    // Pick a random individual of the latest population as parent
+                    List<Program> parents = snapshot;
+                    Program o = new Program(parents.get(random.nextInt(parents.size())));
+                    for (Mutation m : mutationFactory.generate(problem))
+                        o.applyMutation(m);
+
+                    // Screen the offspring with the proxy before its exact
+                    // evaluation, against the population it was bred from
+                    if (multiFidelity != null && !selection.skipsEvaluation(o))
+                    {
+                        if (evaluationsLeft.get() <= 0)
+                        {
+                            exhausted.set(true);
+                            break;
+                        }
+                        boolean screened = multiFidelity.mightBeNonDominated(o, parents);
+                        evaluationsLeft.addAndGet(-multiFidelity.takeProxyCharge());
+                        if (!screened)
+                            continue;
+                    }
+
+                    // Count the offspring as pending before reserving, so that
+                    // no reserved offspring is missed by the selection loop;
+                    // offspring with unchanged labels are not charged
+                    pending.incrementAndGet();
+                    if (!selection.skipsEvaluation(o) && !reserveEvaluation())
+                    {
+                        pending.decrementAndGet();
+                        exhausted.set(true);
+                        break;
+                    }
+
+                    selection.evaluate(o);
+                    offsprings.put(o);
+                }
+            } catch (InterruptedException ex) {
+                // Stopped while waiting for the selection loop
+            } finally {
+                Utils.setStream(null);
+            }
+        }
+    }
+}
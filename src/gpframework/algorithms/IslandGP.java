@@ -0,0 +1,446 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms;
+
+import gpframework.algorithms.components.FitnessCache;
+import gpframework.algorithms.components.MigrationTopology;
+import gpframework.algorithms.components.Mutation;
+import gpframework.algorithms.components.MutationFactory;
+import gpframework.algorithms.components.Population;
+import gpframework.algorithms.components.Selection;
+import gpframework.algorithms.components.selections.SMOGPSelection;
+import gpframework.algorithms.components.selections.TruncationSelection;
+import gpframework.common.Utils;
+import gpframework.common.WorkerThreadFactory;
+import gpframework.common.exceptions.MaximumEvaluationsExceeded;
+import gpframework.common.exceptions.ParameterException;
+import gpframework.indicators.FitnessFunction.FunctionType;
+import gpframework.problems.Problem;
+import gpframework.program.Program;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Island model of the (mu+mu)-GP: evolves a number of populations (islands) of
+ * populationSize individuals each on separate threads, each island with its
+ * own selection criterion, mutation factory, copy of the fitness function and
+ * random stream. Every migrationInterval generations, each island sends copies
+ * of its best individuals to its neighbors in the migration topology, through
+ * lock-free mailboxes; immigrants replace the worst individuals of an island if
+ * they are better. The evaluations and time budgets are global: all the islands
+ * stop as soon as one of them finds an optimum or a budget is exhausted.
+ *
+ * Parameters (besides the ones of Algorithm): islands (def. 4), topology (ring,
+ * torus or full, def. ring), migrationInterval (def. 10), migrants (def. 1).
+ * Only element-wise selection criteria are supported, and each island
+ * evaluates its offspring on its own thread (evaluationThreads and 
+ * generationWorkers are rejected).
+ */
+public class IslandGP extends Algorithm
+{
+    /**
+     * Islands, each evolving its own population.
+     */
+    protected List<Island> islands;
+
+    /**
+     * Topology of the migrations.
+     */
+    protected MigrationTopology topology;
+
+    /**
+     * Generations between two migrations of an island.
+     */
+    protected int migrationInterval;
+
+    /**
+     * Number of individuals sent to each neighbor at each migration.
+     */
+    protected int migrants;
+
+    /**
+     * Evaluations left, shared by the selection criteria of all the islands.
+     */
+    protected AtomicLong evaluationsLeft = new AtomicLong();
+
+    /**
+     * Set when all the islands must stop.
+     */
+    protected AtomicBoolean stopped = new AtomicBoolean();
+
+    /**
+     * Set by the first island finding an optimal individual.
+     */
+    protected AtomicBoolean optimumFound = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param mutationFactory mutation factory (each island uses its own instance)
+     * @param selectionCriterion selection criterion (each island uses its own instance)
+     */
+    public IslandGP(MutationFactory mutationFactory, Selection selectionCriterion)
+    {
+        super(mutationFactory, selectionCriterion);
+    }
+
+    @Override
+    protected void initialize(Problem problem) throws ParameterException
+    {
+        // Islands select element-wise and evaluate on their own thread, checked
+        // before the superclass starts any worker
+        if (selectionCriterion instanceof SMOGPSelection || selectionCriterion instanceof TruncationSelection)
+            throw new ParameterException("IslandGP only supports element-wise selection criteria!");
+        if (hasParameter("evaluationThreads") || hasParameter("generationWorkers"))
+            throw new ParameterException("Parameters evaluationThreads and generationWorkers are not supported by IslandGP!");
+
+        super.initialize(problem);
+
+        int count = hasParameter("islands") ? getIntegerParameter("islands") : 4;
+        migrationInterval = hasParameter("migrationInterval") ? getIntegerParameter("migrationInterval") : 10;
+        migrants = hasParameter("migrants") ? getIntegerParameter("migrants") : 1;
+        if (count <= 0 || migrationInterval <= 0 || migrants < 0)
+            throw new ParameterException("Parameters islands and migrationInterval must be positive, migrants non-negative!");
+
+        try {
+            topology = hasParameter("topology") ? MigrationTopology.valueOf(getParameter("topology").toUpperCase()) : MigrationTopology.RING;
+        } catch (IllegalArgumentException ex) {
+            throw new ParameterException("Parameter topology must be ring, torus or full!");
+        }
+
+        // All the islands charge the budget of the main selection criterion,
+        // which is set once, before any island evaluates its population
+        stopped.set(false);
+        optimumFound.set(false);
+        evaluationsLeft.set(evaluationsBudget);
+        selectionCriterion.shareEvaluationsBudget(evaluationsLeft);
+
+        islands = new ArrayList<Island>(count);
+        for (int i = 0; i < count; i++)
+            islands.add(new Island(i, count, problem, Utils.random().nextLong()));
+    }
+
+    /**
+     * The islands build their own populations, the main one only gathers them
+     * at the end of the run.
+     */
+    @Override
+    protected Population createPopulation(Problem problem)
+    {
+        return new Population(problem);
+    }
+
+    @Override
+    protected Program run(Problem problem)
+    {
+        statistics.put("evaluationsBudgetExhausted", false);
+        statistics.put("timeBudgetExhausted", false);
+
+        ExecutorService threads = Executors.newFixedThreadPool(islands.size(), new WorkerThreadFactory("island"));
+        try {
+            List<Future<?>> running = new ArrayList<Future<?>>(islands.size());
+            for (Island island : islands)
+                running.add(threads.submit(island));
+            for (Future<?> island : running)
+                Utils.await(island);
+        } finally {
+            threads.shutdownNow();
+        }
+
+        // Gather the islands into a single population
+        population = new Population(problem);
+        long migrations = 0;
+        for (Island island : islands)
+        {
+            // Individuals compared with early exit may be left unevaluated by an interrupted selection
+            island.selection.completeEvaluations(island.population);
+            for (Program p : island.population.getIndividuals())
+                population.addIndividual(p);
+            generation += island.generations;
+            migrations += island.migrations;
+            maximumProgramComplexity = Math.max(maximumProgramComplexity, island.maximumComplexity);
+        }
+
+        if ((System.currentTimeMillis() - timeStarted) >= timeBudget)
+        {
+            statistics.put("timeBudgetExhausted", true);
+            Utils.debug("Time budget exhausted!");
+        }
+
+        statistics.put("islands", islands.size());
+        statistics.put("generations", generation);
+        statistics.put("migrations", migrations);
+        recordEvaluationStatistics();
+
+        return selectionCriterion.getBestIndividual(population);
+    }
+
+    @Override
+    protected void recordEvaluationStatistics()
+    {
+        super.recordEvaluationStatistics();
+
+        // Sum the counters of the islands
+        long deltaEvaluations = 0, earlyExitComparisons = 0, evaluationsSaved = 0, hits = 0, misses = 0, evictions = 0;
+        for (Island island : islands)
+        {
+            deltaEvaluations += island.selection.getDeltaEvaluations();
+            earlyExitComparisons += island.selection.getEarlyExitComparisons();
+            evaluationsSaved += island.selection.getEvaluationsSaved();
+
+            FitnessCache fitnessCache = island.selection.getFitnessCache();
+            if (fitnessCache != null)
+            {
+                hits += fitnessCache.getHits();
+                misses += fitnessCache.getMisses();
+                evictions += fitnessCache.getEvictions();
+            }
+        }
+
+        statistics.put("deltaEvaluations", deltaEvaluations);
+        statistics.put("earlyExitComparisons", earlyExitComparisons);
+        if (statistics.containsKey("evaluationsSaved"))
+            statistics.put("evaluationsSaved", evaluationsSaved);
+        if (statistics.containsKey("fitnessCacheHits"))
+        {
+            statistics.put("fitnessCacheHits", hits);
+            statistics.put("fitnessCacheMisses", misses);
+            statistics.put("fitnessCacheEvictions", evictions);
+            statistics.put("fitnessCacheHitRate", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        }
+    }
+
+    /**
+     * Records the statistics of the first optimum found.
+     *
+     * @param island island which found the optimum
+     */
+    protected void recordOptimum(Island island)
+    {
+        if (!optimumFound.compareAndSet(false, true))
+            return;
+
+        Utils.debug("Optimum found on island " + island.index + "!");
+        synchronized (statistics)
+        {
+            statistics.put("timeToOptimum", System.currentTimeMillis() - timeStarted);
+            statistics.put("evaluationsUsedToOptimum", evaluationsBudget - evaluationsLeft.get());
+            statistics.put("maxProgramComplexityToOptimum", island.maximumComplexity);
+        }
+    }
+
+    /**
+     * Population evolving on its own thread.
+     */
+    protected class Island implements Runnable
+    {
+        /**
+         * Index of the island in the topology.
+         */
+        protected int index;
+
+        /**
+         * Population of the island.
+         */
+        protected Population population;
+
+        /**
+         * Selection criterion of the island.
+         */
+        protected Selection selection;
+
+        /**
+         * Mutation factory of the island.
+         */
+        protected MutationFactory mutationFactory;
+
+        /**
+         * Random stream of the island.
+         */
+        protected Random random;
+
+        /**
+         * Immigrants sent by the other islands.
+         */
+        protected Queue<Program> mailbox = new ConcurrentLinkedQueue<Program>();
+
+        /**
+         * Islands receiving the emigrants of this one.
+         */
+        protected int[] neighbors;
+
+        /**
+         * Statistics.
+         */
+        protected long generations = 0, migrations = 0, maximumComplexity = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param index index of the island in the topology
+         * @param count number of islands
+         * @param problem problem to solve
+         * @param seed seed of the random stream of the island
+         * @throws ParameterException if a parameter has an invalid value
+         */
+        public Island(int index, int count, Problem problem, long seed) throws ParameterException
+        {
+            this.index = index;
+            this.neighbors = topology.neighbors(index, count);
+            this.random = new Random(seed);
+
+            try {
+                selection = selectionCriterion.getClass().newInstance();
+                mutationFactory = IslandGP.this.mutationFactory.getClass().newInstance();
+            } catch (Exception ex) {
+                throw new IllegalStateException("Can't create the components of island " + index, ex);
+            }
+
+            configure(selection, problem.getFitnessFunction().copy());
+            selection.shareEvaluationsBudget(evaluationsLeft);
+
+            // Immigrants are compared with evaluated individuals only
+            population = new Population(problem);
+            population.initialize(populationSize);
+            selection.completeEvaluations(population);
+        }
+
+        @Override
+        public void run()
+        {
+            Utils.setStream(random);
+            try {
+                while (!stopped.get() && (System.currentTimeMillis() - timeStarted) < timeBudget)
+                {
+                    generations++;
+                    generation();
+
+                    // Exchange migrants with evaluated populations
+                    if (generations % migrationInterval == 0)
+                        emigrate();
+                    immigrate();
+
+                    if (selection.isOptimal(selection.getBestIndividual(population)))
+                    {
+                        recordOptimum(this);
+                        break;
+                    }
+                }
+            } catch (MaximumEvaluationsExceeded ex) {
+                synchronized (statistics)
+                {
+                    statistics.put("evaluationsBudgetExhausted", true);
+                }
+                Utils.debug("Maximum iterations exceeded!");
+            } finally {
+                // Whatever the reason, the other islands stop too
+                stopped.set(true);
+                Utils.setStream(null);
+            }
+        }
+
+        /**
+         * Performs a single generation of the island.
+         *
+         * @throws MaximumEvaluationsExceeded upon exhaustion of the global evaluations budget
+         */
+        protected void generation() throws MaximumEvaluationsExceeded
+        {
+            List<Program> parents = new ArrayList<Program>(population.getIndividuals());
+            Population offsprings = new Population(population);
+            List<Mutation> mutations = mutationFactory.generate(problem);
+            for (Mutation m : mutations)
+                offsprings.mutate(m);
+
+            population.select(selection, offsprings);
+            for (int i = 0; i < parents.size(); i++)
+                reportOutcome(mutationFactory, mutations, parents.get(i), offsprings.getIndividual(i),
+                        population.getIndividual(i) == offsprings.getIndividual(i));
+            maximumComplexity = Math.max(maximumComplexity, population.getMaximumComplexity());
+        }
+
+        /**
+         * Sends copies of the best individuals to the neighbors.
+         */
+        protected void emigrate()
+        {
+            List<Program> ranked = new ArrayList<Program>(population.getIndividuals());
+            Collections.sort(ranked);
+            if (selection.getFitnessFunction().getType() == FunctionType.MAXIMIZATION)
+                Collections.reverse(ranked);
+
+            for (int m = 0; m < migrants && m < ranked.size(); m++)
+                for (int neighbor : neighbors)
+                {
+                    islands.get(neighbor).mailbox.offer(new Program(ranked.get(m)));
+                    migrations++;
+                }
+        }
+
+        /**
+         * Replaces the worst individuals with the immigrants, if they are better.
+         */
+        protected void immigrate()
+        {
+            Program immigrant;
+            while ((immigrant = mailbox.poll()) != null)
+            {
+                int worst = 0;
+                for (int i = 1; i < population.size(); i++)
+                    if (isBetter(population.getIndividual(worst), population.getIndividual(i)))
+                        worst = i;
+
+                if (isBetter(immigrant, population.getIndividual(worst)))
+                    population.setIndividual(worst, immigrant);
+            }
+        }
+
+        /**
+         * Compares two evaluated individuals by fitness, then by complexity.
+         *
+         * @param first first individual
+         * @param second second individual
+         * @return true if the first individual is strictly better than the second
+         */
+        protected boolean isBetter(Program first, Program second)
+        {
+            int comparison = first.compareTo(second);
+            if (selection.getFitnessFunction().getType() == FunctionType.MINIMIZATION)
+                comparison = -comparison;
+
+            return comparison > 0 || (comparison == 0 && first.complexity() < second.complexity());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms;
+
+import gpframework.algorithms.components.Crossover;
+import gpframework.algorithms.components.Mutation;
+import gpframework.algorithms.components.MutationFactory;
+import gpframework.algorithms.components.Population;
+import gpframework.algorithms.components.Selection;
+import gpframework.algorithms.components.crossovers.SubtreeCrossover;
+import gpframework.algorithms.components.selections.TruncationSelection;
+import gpframework.common.Utils;
+import gpframework.common.exceptions.MaximumEvaluationsExceeded;
+import gpframework.common.exceptions.ParameterException;
+import gpframework.problems.Problem;
+import gpframework.program.Program;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * (mu+lambda)-GP with recombination: at each generation, lambda offspring are
+ * bred from random parents, each by crossover of two parents (with probability
+ * crossoverRate) or by copying one parent, and then by mutation; parents and
+ * offspring compete for the mu places of the population by truncation, on
+ * fitness and then on complexity (see TruncationSelection).
+ *
+ * Parameters (besides the ones of Algorithm, where populationSize is mu):
+ * offspringSize (lambda, def. populationSize), crossoverRate (def. 0.9),
+ * crossover (name of a class in the crossovers package, def. SubtreeCrossover).
+ */
+public class MuPlusLambdaGP extends Algorithm
+{
+    /**
+     * Crossover used to recombine the parents.
+     */
+    protected Crossover crossover;
+
+    /**
+     * Number of offspring bred at each generation.
+     */
+    protected int offspringSize;
+
+    /**
+     * Probability of breeding an offspring by crossover.
+     */
+    protected double crossoverRate;
+
+    /**
+     * Number of offspring bred by crossover.
+     */
+    protected long crossovers;
+
+    /**
+     * Constructor.
+     *
+     * @param mutationFactory mutation factory
+     * @param selectionCriterion ignored, the selection is always by truncation
+     */
+    public MuPlusLambdaGP(MutationFactory mutationFactory, Selection selectionCriterion)
+    {
+        super(mutationFactory, new TruncationSelection());
+    }
+
+    @Override
+    protected void initialize(Problem problem) throws ParameterException
+    {
+        super.initialize(problem);
+
+        offspringSize = hasParameter("offspringSize") ? getIntegerParameter("offspringSize") : populationSize;
+        crossoverRate = hasParameter("crossoverRate") ? getDoubleParameter("crossoverRate") : 0.9;
+        if (offspringSize <= 0 || crossoverRate < 0 || crossoverRate > 1)
+            throw new ParameterException("Parameter offspringSize must be positive, crossoverRate between 0 and 1!");
+
+        if (hasParameter("crossover"))
+        {
+            String name = SubtreeCrossover.class.getPackage().getName() + "." + getParameter("crossover");
+            try {
+                crossover = (Crossover) Class.forName(name).getConstructor(Problem.class).newInstance(problem);
+            } catch (Exception ex) {
+                throw new ParameterException("Parameter crossover must be SubtreeCrossover, OnePointCrossover or SizeFairCrossover!");
+            }
+        }
+        else
+            crossover = new SubtreeCrossover(problem);
+
+        crossovers = 0;
+    }
+
+    @Override
+    protected void generation() throws MaximumEvaluationsExceeded
+    {
+        Population offsprings = new Population(problem);
+        List<Program> parents = new ArrayList<Program>(offspringSize);
+        List<List<Mutation>> mutations = new ArrayList<List<Mutation>>(offspringSize);
+
+        for (int i = 0; i < offspringSize; i++)
+        {
+            // Recombine two random parents, or copy one
+            Program parent = population.getRandomIndividual();
+            Program offspring;
+            if (Utils.random().nextDouble() < crossoverRate)
+            {
+                offspring = crossover.apply(parent, population.getRandomIndividual());
+                crossovers++;
+            }
+            else
+                offspring = new Program(parent);
+
+            // Select mutations according to factory, apply them to offspring
+            List<Mutation> applied = mutationFactory.generate(problem);
+            for (Mutation m : applied)
+                offspring.applyMutation(m);
+
+            offsprings.addIndividual(offspring);
+            parents.add(parent);
+            mutations.add(applied);
+        }
+
+        // Evaluate offspring in parallel, if enabled
+        selectionCriterion.evaluateAll(offsprings.getIndividuals());
+
+        // Select the best among parents and offspring
+        population.select(selectionCriterion, offsprings);
+
+        // Each offspring is compared with its (first) parent
+        Set<Program> survivors = Collections.newSetFromMap(new IdentityHashMap<Program, Boolean>());
+        survivors.addAll(population.getIndividuals());
+        for (int i = 0; i < offspringSize; i++)
+            reportOutcome(mutationFactory, mutations.get(i), parents.get(i), offsprings.getIndividual(i),
+                    survivors.contains(offsprings.getIndividual(i)));
+
+        // Update maximum observed program complexity
+        maximumProgramComplexity = Math.max(maximumProgramComplexity, population.getMaximumComplexity());
+    }
+
+    @Override
+    protected void recordEvaluationStatistics()
+    {
+        super.recordEvaluationStatistics();
+        statistics.put("crossovers", crossovers);
+    }
+}
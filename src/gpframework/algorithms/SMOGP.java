@@ -35,6 +35,9 @@ import gpframework.common.exceptions.MaximumEvaluationsExceeded;
 import gpframework.common.exceptions.ParameterException;
 import gpframework.problems.Problem;
 import gpframework.program.Program;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Simple Multi-Objective Genetic Programming (SMO-GP) algorithm.
@@ -46,6 +49,23 @@ public class SMOGP extends Algorithm
      */
     boolean optimalFitnessFound;
     
+    /**
+     * Number of optimal points of the Pareto front found, when last recorded.
+     */
+    protected int frontCovered;
+    
+    /**
+     * Fraction of the Pareto front covered by optimal individuals, by number 
+     * of evaluations used, recorded whenever it changes.
+     */
+    protected Map<Long, Double> frontCoverage;
+    
+    /**
+     * Fraction of the Pareto front covered by optimal individuals, by 
+     * milliseconds elapsed, recorded whenever it changes.
+     */
+    protected Map<Long, Double> frontCoverageTimes;
+    
     /**
      * Constructor.
      * 
@@ -73,6 +93,13 @@ public class SMOGP extends Algorithm
     {            
         setParameter("populationSize", 1);
         super.initialize(problem);
+        
+        // Coverage curves, filled by recordProgress()
+        frontCovered = -1;
+        frontCoverage = new LinkedHashMap<Long, Double>();
+        frontCoverageTimes = new LinkedHashMap<Long, Double>();
+        statistics.put("frontCoverage", frontCoverage);
+        statistics.put("frontCoverageTimes", frontCoverageTimes);
     }
     
     
@@ -84,17 +111,25 @@ public class SMOGP extends Algorithm
         offsprings.addIndividual(new Program(population.getRandomIndividual()));
                 
         // Select mutations according to factory, apply them to offspring
-        for (Mutation m : mutationFactory.generate(problem))
+        List<Mutation> mutations = mutationFactory.generate(problem);
+        for (Mutation m : mutations)
         {
             offsprings.mutate(m);
         }
    
-        // HACK: adds the correct evaluation to the printout (doesn't affect
-        // the number of evaluations used, just performs an evaluation in advance)
-        selectionCriterion.evaluate(offsprings.getIndividual(0));
+        // The offspring is evaluated lazily by the selection, so that it can be
+        // screened by a proxy, compared with early exit or skipped as a duplicate
+        
+        // The offspring competes with the program with the same complexity, if any
+        Program offspring = offsprings.getIndividual(0);
+        Program twin = population.hasParetoArchive() ? population.getParetoArchive().floor(offspring.complexity()) : null;
+        if (twin != null && twin.complexity() != offspring.complexity())
+            twin = null;
         
         // Select offsprings
         population.select(selectionCriterion, offsprings);
+        reportOutcome(mutationFactory, mutations, twin, offspring, 
+                population.hasParetoArchive() ? population.getParetoArchive().contains(offspring) : population.getIndividuals().contains(offspring));
         
         // Update maximum complexity
         maximumProgramComplexity = Math.max(maximumProgramComplexity, population.getMaximumComplexity());        
@@ -119,34 +154,9 @@ public class SMOGP extends Algorithm
                 // Update maximum experienced population size
                 maximumPopulationSize = Math.max(maximumPopulationSize, population.size());
                 
-                if (!optimalFitnessFound)
-                {
-                    // Check if we have found a maximal fitness point
-                    if (hasOptimalFitnessSolution())
-                    {
-                        Utils.debug("Optimum found!");
-                        optimalFitnessFound = true;
-                        statistics.put("timeToOptimum", System.currentTimeMillis() - timeStarted);
-                        statistics.put("evaluationsUsedToOptimum", evaluationsBudget - selectionCriterion.evaluationsLeft());
-                        statistics.put("maxPopulationSizeToOptimum", maximumPopulationSize);
-                        statistics.put("maxProgramComplexityToOptimum", maximumProgramComplexity);
-                    }
-                    
-                } else {
-                    // Check if we have found a pareto optimal front
-                    
-                    //Utils.debug("Population: \n" + population.parse());
-                    
-                    if (hasCompleteFront())
-                    {
-                        Utils.debug("Complete Pareto front found!");
-                        statistics.put("timeToCompleteFront", System.currentTimeMillis() - timeStarted);
-                        statistics.put("evaluationsUsedToCompleteFront", evaluationsBudget - selectionCriterion.evaluationsLeft());
-                        statistics.put("maxPopulationSizeToCompleteFront", maximumPopulationSize);
-                        statistics.put("maxProgramComplexityToCompleteFront", maximumProgramComplexity);
-                        break;
-                    }
-                }
+                // Stop as soon as the Pareto front is complete
+                if (recordProgress())
+                    break;
                 
             } catch (MaximumEvaluationsExceeded ex) {
                 statistics.put("evaluationsBudgetExhausted", true);
@@ -161,37 +171,81 @@ public class SMOGP extends Algorithm
             Utils.debug("Time budget exhausted! Time used: " + (System.currentTimeMillis() - timeStarted) + " time budget: " + timeBudget);
         }
         
-        statistics.put("evaluationsUsed", evaluationsBudget - selectionCriterion.evaluationsLeft());
+        recordEvaluationStatistics();
 
         return selectionCriterion.getBestIndividual(getPopulation());
         
     }
 
     /**
-     * Checks if the Pareto front is complete.
+     * Records the coverage of the Pareto front, if changed, and the statistics
+     * of the first optimal solution, then of the complete Pareto front, once 
+     * found.
+     * 
+     * @return true if the Pareto front is complete
+     */
+    protected boolean recordProgress()
+    {
+        // The archive counts its optimal individuals as they come and go
+        int covered = population.getParetoArchive().getOptimalCount();
+        if (covered != frontCovered)
+        {
+            double fraction = (double) covered / (selectionCriterion.getFitnessFunction().getN() + 1);
+            frontCoverage.put(evaluationsUsed(), fraction);
+            frontCoverageTimes.put(System.currentTimeMillis() - timeStarted, fraction);
+            frontCovered = covered;
+        }
+        
+        if (!optimalFitnessFound)
+        {
+            // Check if we have found a maximal fitness point
+            if (hasOptimalFitnessSolution())
+            {
+                Utils.debug("Optimum found!");
+                optimalFitnessFound = true;
+                statistics.put("timeToOptimum", System.currentTimeMillis() - timeStarted);
+                statistics.put("evaluationsUsedToOptimum", evaluationsUsed());
+                statistics.put("maxPopulationSizeToOptimum", maximumPopulationSize);
+                statistics.put("maxProgramComplexityToOptimum", maximumProgramComplexity);
+            }
+            
+        } else {
+            // Check if we have found a pareto optimal front
+            
+            //Utils.debug("Population: \n" + population.parse());
+            
+            if (hasCompleteFront())
+            {
+                Utils.debug("Complete Pareto front found!");
+                statistics.put("timeToCompleteFront", System.currentTimeMillis() - timeStarted);
+                statistics.put("evaluationsUsedToCompleteFront", evaluationsUsed());
+                statistics.put("maxPopulationSizeToCompleteFront", maximumPopulationSize);
+                statistics.put("maxProgramComplexityToCompleteFront", maximumProgramComplexity);
+                return true;
+            }
+        }
+        
+        return false;
+    }
+
+    /**
+     * Checks if the Pareto front is complete, in constant time.
      * @return true if all the fitness/complexity trade-offs have been found
      */
-    private boolean hasCompleteFront() {
+    protected boolean hasCompleteFront() {
                 
         // Input size
         int n = selectionCriterion.getFitnessFunction().getN();
-                
-        // If population hasn't got the correct size return false
-        if (population.size() != n+1)
-            return false;
         
-        // If a program is not pareto optimal return false
-        for(Program p : population.getIndividuals())
-            if (!selectionCriterion.isOptimal(p, p.complexity()))
-                return false;
-        return true;
+        // The population must hold exactly one optimal program per point of the front
+        return population.getParetoArchive().isComplete(n+1);
         
     }
 
     /**
      * Checks if the best individual is optimal
      */
-    private boolean hasOptimalFitnessSolution() 
+    protected boolean hasOptimalFitnessSolution() 
     {    
         return selectionCriterion.isOptimal(selectionCriterion.getBestIndividual(population));
     }
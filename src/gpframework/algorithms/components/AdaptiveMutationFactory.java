@@ -0,0 +1,230 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+import gpframework.algorithms.components.mutations.Deletion;
+import gpframework.algorithms.components.mutations.Insertion;
+import gpframework.algorithms.components.mutations.Replacement;
+import gpframework.common.Utils;
+import gpframework.problems.Problem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutation factory which generates a list of 1+Poisson(rate) Mutations, like
+ * PoissonMutationFactory, but adapts both the rate and the probabilities of
+ * selecting a Deletion, an Insertion or a Replacement from the outcomes reported
+ * by the algorithm. The rate follows the one-fifth success rule: it grows by a
+ * factor F after a success and shrinks by a factor F^(1/4) after a failure, so
+ * that it is stable when one offspring out of five is successful; failures on
+ * plateaus and destructive moves near the optimum thus lead to single mutations,
+ * successful streaks to larger moves. The operator mix follows probability
+ * matching: each operator has a quality, the moving average of the successes
+ * of the offspring it contributed to, and is selected with probability
+ * proportional to its quality, but never less than a minimum probability.
+ *
+ * The trajectory of the parameters is recorded at a geometric progression of
+ * outcomes (at most 10% apart) and added to the statistics of the run.
+ */
+public class AdaptiveMutationFactory extends MutationFactory
+{
+    /** Growth factor of the rate after a success. */
+    protected static final double RATE_FACTOR = 1.5;
+
+    /** Shrinking factor of the rate after a failure. */
+    protected static final double RATE_SHRINK = Math.pow(RATE_FACTOR, 0.25);
+
+    /** Bounds of the rate. */
+    protected static final double MINIMUM_RATE = 0.01, MAXIMUM_RATE = 16;
+
+    /** Weight of the last outcome in the qualities of the operators. */
+    protected static final double ADAPTATION_RATE = 0.1;
+
+    /** Minimum probability of selecting an operator. */
+    protected static final double MINIMUM_PROBABILITY = 0.1;
+
+    /** Operator names, in the order of their qualities. */
+    protected static final String[] OPERATORS = { "Insertion", "Deletion", "Replacement" };
+
+    /** Mean number of additional mutations. */
+    protected double rate = 1;
+
+    /** Qualities of the operators. */
+    protected double[] qualities = { 1, 1, 1 };
+
+    /** Number of outcomes reported. */
+    protected long outcomes = 0;
+
+    /** Number of successful outcomes reported. */
+    protected long successes = 0;
+
+    /** Number of outcomes at which the parameters are next recorded. */
+    protected long nextRecord = 1;
+
+    /** Rate, by number of outcomes. */
+    protected Map<Long, Double> rateTrajectory = new LinkedHashMap<Long, Double>();
+
+    /** Probabilities of the operators, by number of outcomes. */
+    protected Map<Long, List<Double>> mixTrajectory = new LinkedHashMap<Long, List<Double>>();
+
+    @Override
+    public List<Mutation> generate(Problem problem)
+    {
+        // Sample Poisson(rate) by inversion
+        int repetitions = 0;
+        double p = Math.exp(-rate), cumulative = p, u = Utils.random().nextDouble();
+        while (u > cumulative && p > 0)
+        {
+            repetitions++;
+            p *= rate / repetitions;
+            cumulative += p;
+        }
+
+        List<Mutation> mutations = new ArrayList<Mutation>(1 + repetitions);
+        for (int i = 0; i <= repetitions; i++)
+            mutations.add(generate(problem, Utils.random().nextDouble()));
+
+        return mutations;
+    }
+
+    /**
+     * Selects an operator according to the current mix.
+     *
+     * @param problem problem linked to the mutation
+     * @param u uniform random number in [0, 1)
+     * @return the mutation
+     */
+    protected Mutation generate(Problem problem, double u)
+    {
+        double[] probabilities = probabilities();
+        if (u < probabilities[0])
+            return new Insertion(problem);
+        if (u < probabilities[0] + probabilities[1])
+            return new Deletion(problem);
+        return new Replacement(problem);
+    }
+
+    /**
+     * Computes the probabilities of the operators from their qualities.
+     *
+     * @return the probabilities of Insertion, Deletion and Replacement
+     */
+    protected double[] probabilities()
+    {
+        double total = 0;
+        for (double q : qualities)
+            total += q;
+
+        double[] probabilities = new double[qualities.length];
+        for (int k = 0; k < qualities.length; k++)
+            probabilities[k] = total > 0
+                    ? MINIMUM_PROBABILITY + (1 - qualities.length * MINIMUM_PROBABILITY) * qualities[k] / total
+                    : 1.0 / qualities.length;
+
+        return probabilities;
+    }
+
+    /**
+     * Finds the index of the operator of a mutation.
+     *
+     * @param m mutation
+     * @return index of the operator, -1 if not generated by this factory
+     */
+    protected int operator(Mutation m)
+    {
+        if (m instanceof Insertion)
+            return 0;
+        if (m instanceof Deletion)
+            return 1;
+        if (m instanceof Replacement)
+            return 2;
+        return -1;
+    }
+
+    @Override
+    public void reportOutcome(List<Mutation> mutations, boolean success)
+    {
+        outcomes++;
+        if (success)
+        {
+            successes++;
+            rate = Math.min(rate * RATE_FACTOR, MAXIMUM_RATE);
+        }
+        else
+            rate = Math.max(rate / RATE_SHRINK, MINIMUM_RATE);
+
+        // Credit each operator used once, whatever the number of its mutations
+        boolean[] used = new boolean[qualities.length];
+        for (Mutation m : mutations)
+        {
+            int k = operator(m);
+            if (k >= 0)
+                used[k] = true;
+        }
+        for (int k = 0; k < qualities.length; k++)
+            if (used[k])
+                qualities[k] = (1 - ADAPTATION_RATE) * qualities[k] + ADAPTATION_RATE * (success ? 1 : 0);
+
+        if (outcomes >= nextRecord)
+        {
+            record();
+            nextRecord = Math.max(nextRecord + 1, (long) (nextRecord * 1.1));
+        }
+    }
+
+    /**
+     * Records the current parameters in the trajectories.
+     */
+    protected void record()
+    {
+        rateTrajectory.put(outcomes, rate);
+
+        List<Double> mix = new ArrayList<Double>(qualities.length);
+        for (double p : probabilities())
+            mix.add(p);
+        mixTrajectory.put(outcomes, mix);
+    }
+
+    @Override
+    public void report(Map<String, Object> statistics)
+    {
+        // Nothing to report if the algorithm doesn't report outcomes
+        if (outcomes == 0)
+            return;
+
+        record();
+
+        statistics.put("mutationOutcomes", outcomes);
+        statistics.put("mutationSuccesses", successes);
+        statistics.put("mutationRate", rate);
+        statistics.put("mutationOperators", Arrays.asList(OPERATORS));
+        statistics.put("mutationRateTrajectory", rateTrajectory);
+        statistics.put("mutationMixTrajectory", mixTrajectory);
+    }
+}
@@ -0,0 +1,126 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+import gpframework.problems.Problem;
+import gpframework.program.Program;
+import gpframework.program.Term;
+
+/**
+ * This is the abstract base class for every crossover which can be applied to
+ * a pair of programs. A crossover produces an offspring by replacing a subtree
+ * of (a copy of) the first parent with a copy of a subtree of the second one,
+ * the donor; the parents are left unchanged. Subclasses only choose the two
+ * subtrees, and must leave the resulting tree correct (e.g. parent, program,
+ * parentIndex fields are OK), which replace() takes care of.
+ */
+public abstract class Crossover
+{
+    /**
+     * Reference to the problem we're trying to solve.
+     */
+    protected Problem problem;
+
+    /**
+     * Constructor.
+     *
+     * @param problem problem linked to this crossover
+     */
+    protected Crossover(Problem problem)
+    {
+        this.problem = problem;
+    }
+
+    /**
+     * Recombines two programs.
+     *
+     * @param first parent which receives the subtree
+     * @param donor parent which gives the subtree
+     * @return the offspring, not evaluated
+     */
+    public Program apply(Program first, final Program donor)
+    {
+        Program offspring = new Program(first);
+
+        // Applied as a mutation, so that the cached fitness of the copy is
+        // reset; no event is recorded, i.e. the offspring is evaluated from scratch
+        offspring.applyMutation(new Mutation(problem)
+        {
+            @Override
+            public void apply(Program program)
+            {
+                graft(program, donor);
+            }
+
+            @Override
+            public Object clone()
+            {
+                return this;
+            }
+        });
+
+        return offspring;
+    }
+
+    /**
+     * Replaces a subtree of a program with a copy of a subtree of the donor.
+     *
+     * @param offspring program to modify
+     * @param donor program to copy the subtree from, not to be modified
+     */
+    protected abstract void graft(Program offspring, Program donor);
+
+    /**
+     * Replaces a term with a copy of a subtree of another program.
+     *
+     * @param target term to replace
+     * @param subtree subtree to copy in place of the term
+     */
+    protected void replace(Term target, Term subtree)
+    {
+        Program program = target.getProgram();
+
+        Term copy = (Term) subtree.clone();
+        for (Term t : copy.getTerminals())
+            t.setProgram(program);
+        for (Term t : copy.getFunctions())
+            t.setProgram(program);
+
+        if (target.isRoot())
+        {
+            program.setRoot(copy);
+            copy.setRoot();
+        }
+        else
+            target.getParent().replaceDescendant(target, copy);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,337 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+import gpframework.common.Utils;
+import gpframework.common.WorkerThreadFactory;
+import gpframework.common.exceptions.MaximumEvaluationsExceeded;
+import gpframework.indicators.DeltaFitnessFunction;
+import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.FitnessProfile;
+import gpframework.program.Program;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of evaluator threads, each owning a copy of the fitness function (see
+ * FitnessFunction.copy()) with its own scratch buffers, which evaluates
+ * batches of programs in parallel. Evaluations are reserved in advance from an
+ * evaluations budget shared with the selection criterion, which is updated
+ * atomically: a batch is only evaluated as far as the budget allows. If
+ * incremental evaluation is enabled, offspring are evaluated from the fitness
+ * of their parent whenever possible (see Selection.evaluateDelta()). Each
+ * thread evaluates a chunk of the batch: the programs of the chunk which need
+ * a full evaluation go through FitnessFunction.evaluateBatchLong() together,
+ * if the fitness values are integral (and not in large scale mode, where the 
+ * labels are kept off the heap).
+ */
+public class EvaluationService
+{
+    /**
+     * Fitness function copied by each evaluator thread.
+     */
+    private FitnessFunction fitnessFunction;
+
+    /**
+     * Copy of the fitness function owned by each evaluator thread.
+     */
+    private ThreadLocal<FitnessFunction> evaluators;
+
+    /**
+     * Evaluator threads.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Number of evaluator threads.
+     */
+    private int threads;
+
+    /**
+     * Remaining evaluations budget, null if unlimited.
+     */
+    private AtomicLong evaluationsBudget;
+
+    /**
+     * Number of evaluations submitted to the evaluator threads.
+     */
+    private AtomicLong evaluations = new AtomicLong();
+
+    /**
+     * Whether to evaluate offspring incrementally, and to verify it.
+     */
+    private volatile boolean deltaEvaluation = false, deltaVerification = false;
+
+    /**
+     * Number of evaluations performed incrementally by the evaluator threads.
+     */
+    private AtomicLong deltaEvaluations = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param fitnessFunction fitness function to evaluate programs with
+     * @param threads number of evaluator threads
+     */
+    public EvaluationService(FitnessFunction fitnessFunction, int threads)
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one evaluator thread is needed");
+
+        this.fitnessFunction = fitnessFunction;
+        this.threads = threads;
+
+        evaluators = new ThreadLocal<FitnessFunction>()
+        {
+            @Override
+            protected FitnessFunction initialValue()
+            {
+                return EvaluationService.this.fitnessFunction.copy();
+            }
+        };
+
+        executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory("evaluator"));
+    }
+
+    /**
+     * Sets the budget the evaluations are charged to.
+     *
+     * @param evaluationsBudget remaining evaluations, shared with the selection
+     *        criterion, null if unlimited
+     */
+    public void setEvaluationsBudget(AtomicLong evaluationsBudget)
+    {
+        this.evaluationsBudget = evaluationsBudget;
+    }
+
+    /**
+     * Configures incremental evaluation of offspring, used when the fitness 
+     * function supports it.
+     *
+     * @param enabled whether to use incremental evaluation
+     * @param verification whether to check each incremental evaluation against a full one
+     */
+    public void setDeltaEvaluation(boolean enabled, boolean verification)
+    {
+        this.deltaEvaluation = enabled;
+        this.deltaVerification = verification;
+    }
+
+    /**
+     * Reserves a number of evaluations from the budget.
+     *
+     * @param count number of evaluations needed
+     * @return the number of evaluations granted, less than count if the budget
+     *         is almost exhausted
+     */
+    public int reserve(int count)
+    {
+        if (evaluationsBudget == null)
+            return count;
+
+        while (true)
+        {
+            long left = evaluationsBudget.get();
+            int granted = (int) Math.max(0, Math.min(left, count));
+            if (granted == 0 || evaluationsBudget.compareAndSet(left, left - granted))
+                return granted;
+        }
+    }
+
+    /**
+     * Submits a batch of programs for evaluation, charging one evaluation each.
+     * If the budget doesn't allow evaluating the whole batch, only its first
+     * programs are submitted, split into one chunk per evaluator thread. The 
+     * fitness of each program is cached on it by an evaluator thread: programs
+     * must not be used until the evaluation of their chunk is complete.
+     *
+     * @param solutions programs to evaluate, without a cached fitness
+     * @return the pending evaluations of the chunks, each giving the number of
+     *         programs in its chunk
+     * @throws MaximumEvaluationsExceeded if the budget is exhausted
+     */
+    public List<Future<Integer>> submit(List<Program> solutions) throws MaximumEvaluationsExceeded
+    {
+        int granted = reserve(solutions.size());
+        if (granted == 0 && !solutions.isEmpty())
+            throw new MaximumEvaluationsExceeded();
+
+        evaluations.addAndGet(granted);
+
+        int chunks = Math.min(threads, granted);
+        List<Future<Integer>> pending = new ArrayList<Future<Integer>>(chunks);
+        for (int c = 0; c < chunks; c++)
+            pending.add(executor.submit(new Evaluation(solutions.subList(c * granted / chunks, (c+1) * granted / chunks))));
+
+        return pending;
+    }
+
+    /**
+     * Evaluates a batch of programs in parallel, and waits for the evaluations
+     * to complete (see submit()).
+     *
+     * @param solutions programs to evaluate, without a cached fitness
+     * @return the number of programs evaluated
+     * @throws MaximumEvaluationsExceeded if the budget is exhausted
+     */
+    public int evaluate(List<Program> solutions) throws MaximumEvaluationsExceeded
+    {
+        int evaluated = 0;
+        for (Future<Integer> f : submit(solutions))
+            evaluated += Utils.await(f);
+
+        return evaluated;
+    }
+
+    /**
+     * Stops the evaluator threads, pending evaluations are cancelled.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the number of evaluator threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * @return the number of evaluations submitted to the evaluator threads
+     */
+    public long getEvaluations()
+    {
+        return evaluations.get();
+    }
+
+    /**
+     * @return the number of evaluations performed incrementally by the evaluator threads
+     */
+    public long getDeltaEvaluations()
+    {
+        return deltaEvaluations.get();
+    }
+
+    /**
+     * Evaluation of a chunk of programs by the copy of the fitness function
+     * owned by the current thread, keeping primitive fitness values unboxed.
+     */
+    private class Evaluation implements Callable<Integer>
+    {
+        /**
+         * Programs to evaluate.
+         */
+        private List<Program> solutions;
+
+        /**
+         * Constructor.
+         *
+         * @param solutions programs to evaluate
+         */
+        public Evaluation(List<Program> solutions)
+        {
+            this.solutions = solutions;
+        }
+
+        @Override
+        public Integer call()
+        {
+            FitnessFunction evaluator = evaluators.get();
+
+            // Incremental evaluations are not profiled, like on the calling thread
+            List<Program> full = new ArrayList<Program>(solutions.size());
+            for (Program solution : solutions)
+            {
+                List<MutationEvent> events = solution.getPendingEvents();
+                if (deltaEvaluation && evaluator instanceof DeltaFitnessFunction && Selection.evaluateDelta(evaluator, solution))
+                {
+                    deltaEvaluations.incrementAndGet();
+                    if (deltaVerification)
+                        Selection.verifyDelta(evaluator, solution, events);
+                }
+                else
+                    full.add(solution);
+            }
+
+            if (!full.isEmpty())
+                evaluate(evaluator, full);
+
+            return solutions.size();
+        }
+
+        /**
+         * Evaluates programs from scratch, through the batch kernels of the
+         * function if the fitness values are integral.
+         *
+         * @param evaluator fitness function of the current thread
+         * @param full programs to evaluate
+         */
+        private void evaluate(FitnessFunction evaluator, List<Program> full)
+        {
+            FitnessProfile profile = evaluator.getProfile();
+            long started = profile == null ? 0 : System.nanoTime();
+
+            switch (evaluator.getValueType())
+            {
+                case INTEGER:
+                case LONG:
+                    if (!evaluator.isLargeScale())
+                    {
+                        long[] fitness = evaluator.evaluateBatchLong(full);
+                        for (int i = 0; i < fitness.length; i++)
+                            full.get(i).setCachedFitness(fitness[i], evaluator.getValueType());
+                        break;
+                    }
+                    for (Program solution : full)
+                        solution.setCachedFitness(evaluator.evaluateLong(solution), evaluator.getValueType());
+                    break;
+                case DOUBLE:
+                    for (Program solution : full)
+                        solution.setCachedFitness(evaluator.evaluateDouble(solution));
+                    break;
+                default:
+                    for (Program solution : full)
+                        solution.setCachedFitness(evaluator.evaluate(solution));
+            }
+
+            // The time of a batch is shared evenly by its programs
+            if (profile != null)
+            {
+                long elapsed = (System.nanoTime() - started) / full.size();
+                for (Program solution : full)
+                    profile.recordEvaluation(solution, elapsed);
+            }
+        }
+    }
+}
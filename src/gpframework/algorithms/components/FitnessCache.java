@@ -0,0 +1,207 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of fitness values, keyed by hashes of normalized phenotypes 
+ * (see FitnessFunction.phenotypeHash()) and shared by all the programs 
+ * evaluated during a run. The phenotypes themselves are kept to rule out hash
+ * collisions, except in large scale mode, where they are never built on the
+ * heap and the hashes are trusted. When full, entries are evicted according to the CLOCK (second chance)
+ * policy: a hit marks the entry as referenced, and the clock hand clears marks
+ * until it finds an unreferenced entry to replace.
+ */
+public class FitnessCache
+{
+    /**
+     * Slot of the entry for each phenotype hash.
+     */
+    private Map<Long, Integer> slots;
+
+    /**
+     * Hashes of the cached phenotypes.
+     */
+    private long[] hashes;
+
+    /**
+     * Cached phenotypes (kept to rule out hash collisions), null in large scale mode.
+     */
+    private int[][] phenotypes;
+
+    /**
+     * Cached fitness values.
+     */
+    private Comparable[] fitnesses;
+
+    /**
+     * Reference bits of the CLOCK policy.
+     */
+    private boolean[] referenced;
+
+    /**
+     * Number of used slots.
+     */
+    private int size = 0;
+
+    /**
+     * Position of the clock hand.
+     */
+    private int hand = 0;
+
+    /**
+     * Statistics.
+     */
+    private long hits = 0, misses = 0, evictions = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity maximum number of cached fitness values
+     */
+    public FitnessCache(int capacity)
+    {
+        slots = new HashMap<Long, Integer>(2*capacity);
+        hashes = new long[capacity];
+        phenotypes = new int[capacity][];
+        fitnesses = new Comparable[capacity];
+        referenced = new boolean[capacity];
+    }
+
+    /**
+     * Looks up the fitness of a phenotype, updating hit/miss counters.
+     *
+     * @param hash hash of the normalized phenotype
+     * @param phenotype normalized phenotype, null to trust the hash
+     * @return the cached fitness, or null if missing
+     */
+    public Comparable get(long hash, int[] phenotype)
+    {
+        Integer slot = slots.get(hash);
+
+        if (slot != null && (phenotype == null || Arrays.equals(phenotypes[slot], phenotype)))
+        {
+            hits++;
+            referenced[slot] = true;
+            return fitnesses[slot];
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Stores the fitness of a phenotype, possibly evicting another entry.
+     *
+     * @param hash hash of the normalized phenotype
+     * @param phenotype normalized phenotype, null to trust the hash
+     * @param fitness fitness of the phenotype
+     */
+    public void put(long hash, int[] phenotype, Comparable fitness)
+    {
+        Integer slot = slots.get(hash);
+
+        // Replace entries with the same hash (same or colliding phenotype)
+        if (slot == null)
+        {
+            slot = nextSlot();
+            slots.put(hash, slot);
+        }
+
+        hashes[slot] = hash;
+        phenotypes[slot] = phenotype;
+        fitnesses[slot] = fitness;
+        referenced[slot] = false;
+    }
+
+    /**
+     * Finds a free slot, or evicts an entry according to the CLOCK policy.
+     *
+     * @return the index of the slot to use
+     */
+    private int nextSlot()
+    {
+        if (size < hashes.length)
+            return size++;
+
+        // Give a second chance to referenced entries
+        while (referenced[hand])
+        {
+            referenced[hand] = false;
+            hand = (hand + 1) % hashes.length;
+        }
+
+        int victim = hand;
+        hand = (hand + 1) % hashes.length;
+
+        slots.remove(hashes[victim]);
+        evictions++;
+        return victim;
+    }
+
+    /**
+     * @return the number of lookups which found a fitness value
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups which didn't find a fitness value
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the number of evicted entries
+     */
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * @return the fraction of lookups which found a fitness value
+     */
+    public double getHitRate()
+    {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * @return the number of cached fitness values
+     */
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,110 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+/**
+ * Topology of the migrations between the islands of an island model, i.e. the
+ * islands each island sends its migrants to.
+ */
+public enum MigrationTopology
+{
+    /** Each island sends migrants to the following one, the last one to the first. */
+    RING
+    {
+        @Override
+        public int[] neighbors(int island, int islands)
+        {
+            if (islands == 1)
+                return new int[0];
+            return new int[] { (island + 1) % islands };
+        }
+    },
+
+    /**
+     * Islands are laid on a grid as square as possible, with wrap-around
+     * edges: each island sends migrants to its (distinct) neighbors in the
+     * four directions.
+     */
+    TORUS
+    {
+        @Override
+        public int[] neighbors(int island, int islands)
+        {
+            // Largest divisor of the number of islands not exceeding its square root
+            int rows = (int) Math.sqrt(islands);
+            while (islands % rows != 0)
+                rows--;
+            int columns = islands / rows;
+
+            int row = island / columns, column = island % columns;
+            int[] candidates = {
+                row * columns + (column + 1) % columns,
+                row * columns + (column + columns - 1) % columns,
+                ((row + 1) % rows) * columns + column,
+                ((row + rows - 1) % rows) * columns + column
+            };
+
+            // Skip the island itself and repeated neighbors (on thin grids)
+            int[] neighbors = new int[candidates.length];
+            int count = 0;
+            for (int candidate : candidates)
+            {
+                boolean repeated = candidate == island;
+                for (int i = 0; i < count && !repeated; i++)
+                    repeated = neighbors[i] == candidate;
+                if (!repeated)
+                    neighbors[count++] = candidate;
+            }
+
+            int[] distinct = new int[count];
+            System.arraycopy(neighbors, 0, distinct, 0, count);
+            return distinct;
+        }
+    },
+
+    /** Each island sends migrants to all the other ones. */
+    FULL
+    {
+        @Override
+        public int[] neighbors(int island, int islands)
+        {
+            int[] neighbors = new int[islands - 1];
+            for (int i = 0, n = 0; i < islands; i++)
+                if (i != island)
+                    neighbors[n++] = i;
+            return neighbors;
+        }
+    };
+
+    /**
+     * Finds the islands an island sends its migrants to.
+     *
+     * @param island index of the island
+     * @param islands number of islands
+     * @return the indices of the destination islands
+     */
+    public abstract int[] neighbors(int island, int islands);
+}
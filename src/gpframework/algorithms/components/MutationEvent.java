@@ -0,0 +1,183 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+/**
+ * Describes the effect of a Mutation on the sequence of labels produced by a
+ * program (i.e. its phenotype before normalization). Recorded by mutations on
+ * the mutated Program, allows fitness functions to update the fitness of the
+ * parent incrementally instead of evaluating the offspring from scratch.
+ */
+public class MutationEvent
+{
+    /**
+     * Kind of change in the sequence of labels.
+     */
+    public enum Kind
+    {
+        /** A label has been inserted. */
+        INSERTION,
+
+        /** A label has been removed. */
+        DELETION,
+
+        /** A label has been replaced by another one. */
+        REPLACEMENT,
+
+        /** The sequence of labels is unchanged (e.g. a function was replaced). */
+        NONE
+    }
+
+    /**
+     * Kind of change.
+     */
+    private Kind kind;
+
+    /**
+     * Position of the change in the sequence of labels produced by the program.
+     */
+    private int position;
+
+    /**
+     * Label at the position before the mutation (null for insertions).
+     */
+    private Integer oldLabel;
+
+    /**
+     * Label at the position after the mutation (null for deletions).
+     */
+    private Integer newLabel;
+
+    /**
+     * Constructor.
+     *
+     * @param kind kind of change
+     * @param position position of the change in the sequence of labels
+     * @param oldLabel label before the mutation, null for insertions
+     * @param newLabel label after the mutation, null for deletions
+     */
+    public MutationEvent(Kind kind, int position, Integer oldLabel, Integer newLabel)
+    {
+        this.kind = kind;
+        this.position = position;
+        this.oldLabel = oldLabel;
+        this.newLabel = newLabel;
+    }
+
+    /**
+     * Constructor for mutations which leave the sequence of labels unchanged.
+     */
+    public MutationEvent()
+    {
+        this(Kind.NONE, -1, null, null);
+    }
+
+    /**
+     * Rebuilds the sequence of labels preceding this event.
+     *
+     * @param labels sequence of labels after this event
+     * @return sequence of labels before this event
+     */
+    public int[] revert(int[] labels)
+    {
+        int[] previous;
+
+        switch(kind)
+        {
+            case INSERTION:
+                previous = new int[labels.length-1];
+                System.arraycopy(labels, 0, previous, 0, position);
+                System.arraycopy(labels, position+1, previous, position, labels.length-position-1);
+                break;
+            case DELETION:
+                previous = new int[labels.length+1];
+                System.arraycopy(labels, 0, previous, 0, position);
+                previous[position] = oldLabel;
+                System.arraycopy(labels, position, previous, position+1, labels.length-position);
+                break;
+            case REPLACEMENT:
+                previous = labels.clone();
+                previous[position] = oldLabel;
+                break;
+            default:
+                previous = labels.clone();
+                break;
+        }
+
+        return previous;
+    }
+
+    /**
+     * Tells if this event changes the sequence of labels, i.e. it is neither
+     * of kind NONE nor the replacement of a label with the same one.
+     *
+     * @return true if the labels after the event differ from the ones before
+     */
+    public boolean changesLabels()
+    {
+        if (kind == Kind.NONE)
+            return false;
+        return kind != Kind.REPLACEMENT || !oldLabel.equals(newLabel);
+    }
+
+    /**
+     * @return the kind of change
+     */
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    /**
+     * @return the position of the change in the sequence of labels
+     */
+    public int getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * @return the label before the mutation, null for insertions
+     */
+    public Integer getOldLabel()
+    {
+        return oldLabel;
+    }
+
+    /**
+     * @return the label after the mutation, null for deletions
+     */
+    public Integer getNewLabel()
+    {
+        return newLabel;
+    }
+
+    @Override
+    public String toString()
+    {
+        return kind + "(" + position + ": " + oldLabel + " -> " + newLabel + ")";
+    }
+}
@@ -27,6 +27,7 @@ package gpframework.algorithms.components;
 
 import gpframework.problems.Problem;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class to instantiate mutations. Called by Algorithms to produce new 
@@ -41,4 +42,26 @@ public abstract class MutationFactory {
      */
     public abstract List<Mutation> generate(Problem problem);   
     
+    /**
+     * Reports the outcome of mutations generated by this factory, once the 
+     * offspring they produced went through selection. Ignored by default, 
+     * allows adaptive factories to tune their policy online.
+     * 
+     * @param mutations mutations applied to the offspring
+     * @param success true if the offspring was selected and differs in fitness
+     *        or complexity from the program it competed with (i.e. the move 
+     *        was not neutral)
+     */
+    public void reportOutcome(List<Mutation> mutations, boolean success)
+    {
+    }
+    
+    /**
+     * Adds statistics about the policy of this factory, if any.
+     * 
+     * @param statistics statistics of the run
+     */
+    public void report(Map<String, Object> statistics)
+    {
+    }
 }
@@ -0,0 +1,318 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+import gpframework.indicators.FitnessFunction;
+import gpframework.program.Program;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Archive of mutually non-dominated programs wrt. fitness and complexity, as
+ * kept by SMO-GP. Such an archive holds at most one program per complexity
+ * value, and the fitness of its programs strictly improves as their complexity
+ * grows: programs are therefore indexed by complexity, so that the programs
+ * relevant to a dominance query (the most complex one not more complex than a
+ * candidate, and the least complex ones not less complex) are found, inserted
+ * and evicted in O(log n). The archive is also kept in an array in no
+ * particular order, so that a Population can be a view of it, with constant
+ * time random access. The number of programs which are optimal for their
+ * complexity is kept up to date, so that the completeness of the Pareto front
+ * is checked in constant time.
+ */
+public class ParetoArchive implements Iterable<Program>
+{
+    /**
+     * Programs by complexity.
+     */
+    private NavigableMap<Integer, Program> byComplexity = new TreeMap<Integer, Program>();
+
+    /**
+     * Programs, in no particular order.
+     */
+    private List<Program> members = new ArrayList<Program>();
+
+    /**
+     * Position of each program in the members.
+     */
+    private Map<Program, Integer> positions = new IdentityHashMap<Program, Integer>();
+
+    /**
+     * Read-only view of the members.
+     */
+    private List<Program> view = Collections.unmodifiableList(members);
+
+    /**
+     * Fitness function telling which programs are optimal for their complexity.
+     */
+    private FitnessFunction fitnessFunction;
+
+    /**
+     * Programs which are optimal for their complexity.
+     */
+    private Set<Program> optimal = Collections.newSetFromMap(new IdentityHashMap<Program, Boolean>());
+
+    /**
+     * Programs by hash of their phenotype, null until the first lookup.
+     */
+    private Map<Long, Program> byPhenotype;
+
+    /**
+     * Constructor.
+     *
+     * @param programs initial programs, evaluated and mutually non-dominated
+     *        (among programs with the same complexity, only the last one is kept)
+     * @param fitnessFunction fitness function telling which programs are
+     *        optimal for their complexity
+     */
+    public ParetoArchive(List<Program> programs, FitnessFunction fitnessFunction)
+    {
+        this.fitnessFunction = fitnessFunction;
+        for (Program p : programs)
+            add(p);
+    }
+
+    /**
+     * Finds the most complex program not more complex than a given complexity,
+     * i.e. the fittest among them.
+     *
+     * @param complexity complexity of the candidate
+     * @return the program, null if all the programs are more complex
+     */
+    public Program floor(int complexity)
+    {
+        Map.Entry<Integer, Program> entry = byComplexity.floorEntry(complexity);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Iterates the programs not less complex than a given complexity, from
+     * the least complex (i.e. the least fit) one. Programs can be evicted
+     * through the iterator.
+     *
+     * @param complexity complexity of the candidate
+     * @return an iterator over the programs, by increasing complexity
+     */
+    public Iterator<Program> ceiling(int complexity)
+    {
+        final Iterator<Program> programs = byComplexity.tailMap(complexity, true).values().iterator();
+
+        return new Iterator<Program>()
+        {
+            private Program last;
+
+            @Override
+            public boolean hasNext()
+            {
+                return programs.hasNext();
+            }
+
+            @Override
+            public Program next()
+            {
+                return last = programs.next();
+            }
+
+            @Override
+            public void remove()
+            {
+                programs.remove();
+                removeMember(last);
+            }
+        };
+    }
+
+    /**
+     * Adds a program, replacing the program with the same complexity, if any.
+     *
+     * @param p program to add, evaluated and not dominated by the others
+     */
+    public void add(Program p)
+    {
+        Program replaced = byComplexity.put(p.complexity(), p);
+        if (replaced != null)
+            removeMember(replaced);
+
+        positions.put(p, members.size());
+        members.add(p);
+        if (fitnessFunction.isOptimal(p, p.complexity()))
+            optimal.add(p);
+        if (byPhenotype != null)
+            byPhenotype.put(fitnessFunction.phenotypeHash(p), p);
+    }
+
+    /**
+     * Removes a program.
+     *
+     * @param p program to remove
+     */
+    public void remove(Program p)
+    {
+        if (positions.containsKey(p))
+        {
+            byComplexity.remove(p.complexity());
+            removeMember(p);
+        }
+    }
+
+    /**
+     * Removes a program from the members, by moving the last one in its place.
+     *
+     * @param p program to remove
+     */
+    private void removeMember(Program p)
+    {
+        int position = positions.remove(p);
+        optimal.remove(p);
+        if (byPhenotype != null)
+        {
+            Long hash = fitnessFunction.phenotypeHash(p);
+            if (byPhenotype.get(hash) == p)
+                byPhenotype.remove(hash);
+        }
+        Program last = members.remove(members.size() - 1);
+        if (last != p)
+        {
+            members.set(position, last);
+            positions.put(last, position);
+        }
+    }
+
+    /**
+     * Finds a program with a given phenotype, which then has the fitness of
+     * any program with that phenotype. Phenotypes are indexed by hash from the
+     * first lookup on, so that a lookup takes constant time; of the programs
+     * with colliding hashes, only the last one added is found. In large scale
+     * mode phenotypes are never built on the heap, and equal hashes are taken
+     * for equal phenotypes.
+     *
+     * @param o program whose phenotype is looked up
+     * @return the program, null if not found
+     */
+    public Program findPhenotype(Program o)
+    {
+        if (byPhenotype == null)
+        {
+            byPhenotype = new HashMap<Long, Program>();
+            for (Program p : members)
+                byPhenotype.put(fitnessFunction.phenotypeHash(p), p);
+        }
+
+        Program p = byPhenotype.get(fitnessFunction.phenotypeHash(o));
+        if (p == null || fitnessFunction.isLargeScale())
+            return p;
+        return Arrays.equals(fitnessFunction.cachedPhenotype(p), fitnessFunction.cachedPhenotype(o)) ? p : null;
+    }
+
+    /**
+     * Tells if a program is in the archive.
+     *
+     * @param p program to look for
+     * @return true if the very program is in the archive
+     */
+    public boolean contains(Program p)
+    {
+        return positions.containsKey(p);
+    }
+
+    /**
+     * Gets the most complex program, i.e. the fittest one.
+     *
+     * @return the most complex program, null if the archive is empty
+     */
+    public Program getMostComplex()
+    {
+        return byComplexity.isEmpty() ? null : byComplexity.lastEntry().getValue();
+    }
+
+    /**
+     * Gets the complexity of the most complex program.
+     *
+     * @return the maximum complexity, 0 if the archive is empty
+     */
+    public int getMaximumComplexity()
+    {
+        return byComplexity.isEmpty() ? 0 : byComplexity.lastKey();
+    }
+
+    /**
+     * Gets the number of programs which are optimal for their complexity.
+     *
+     * @return the number of optimal programs
+     */
+    public int getOptimalCount()
+    {
+        return optimal.size();
+    }
+
+    /**
+     * Tells if the archive is a complete Pareto front, i.e. if it holds an
+     * optimal program for each of a number of complexity values.
+     *
+     * @param frontSize number of points of the Pareto front
+     * @return true if all the programs are optimal, and there are frontSize of them
+     */
+    public boolean isComplete(int frontSize)
+    {
+        return members.size() == frontSize && optimal.size() == frontSize;
+    }
+
+    /**
+     * Gets a read-only view of the programs, in no particular order, which
+     * reflects the changes of the archive.
+     *
+     * @return the programs
+     */
+    public List<Program> asList()
+    {
+        return view;
+    }
+
+    /**
+     * Number of programs.
+     *
+     * @return the number of programs in the archive
+     */
+    public int size()
+    {
+        return members.size();
+    }
+
+    @Override
+    public Iterator<Program> iterator()
+    {
+        return view.iterator();
+    }
+}
@@ -48,7 +48,7 @@ public class PoissonMutationFactory extends SingleMutationFactory {
      */
     public PoissonMutationFactory()
     {
-        poisson = new Poisson(1, new DRand(Utils.random.nextInt()));
+        poisson = new Poisson(1, new DRand(Utils.random().nextInt()));
     }
     
     @Override
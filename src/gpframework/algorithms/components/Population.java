@@ -28,10 +28,16 @@ package gpframework.algorithms.components;
 import gpframework.common.Utils;
 import gpframework.common.exceptions.MaximumEvaluationsExceeded;
 import gpframework.common.exceptions.OptimumFoundException;
+import gpframework.indicators.FitnessFunction.FunctionType;
 import gpframework.problems.Problem;
 import gpframework.program.Program;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Represents a generation of Programs.
@@ -46,6 +52,12 @@ public final class Population implements Cloneable {
     
     protected long maximumComplexity = 0;
     
+    /** Pareto archive the individuals are a view of, null if none */
+    private ParetoArchive archive;
+    
+    /** Tournament tree tracking the best individual */
+    private TournamentTree tournament = new TournamentTree();
+    
     /**
      * Constructor.
      * 
@@ -81,6 +93,7 @@ public final class Population implements Cloneable {
     public void initialize(int n)
     {
         individuals = problem.getProgramFactory().generate(n, problem);
+        tournament.invalidate();
         
         // Find most complex program and cache its complexity
         recomputeMaximumComplexity();
@@ -96,11 +109,96 @@ public final class Population implements Cloneable {
     {
         for (Program p : individuals)
             p.applyMutation(m);
+        tournament.invalidate();
         
         // Find most complex program and cache its complexity
         recomputeMaximumComplexity();
     }
     
+    /**
+     * Creates the offspring of the population in parallel, by copying each
+     * individual and applying a list of mutations to the copy (as mutate() 
+     * does on a copy of the population). The population is split in contiguous
+     * chunks, each mutated by a worker with its own random stream, seeded from
+     * the random generator of the calling thread: for a fixed seed and number
+     * of chunks, the offspring don't depend on the scheduling of the workers.
+     * 
+     * @param workers worker threads
+     * @param chunks number of chunks to split the population into
+     * @param mutations the mutations to apply to each offspring
+     * @return the offspring, in the order of their parents
+     */
+    public Population breed(ExecutorService workers, int chunks, List<Mutation> mutations)
+    {
+        List<Future<List<Program>>> bred = new ArrayList<Future<List<Program>>>(chunks);
+        for (int c = 0; c < chunks; c++)
+        {
+            List<Program> parents = individuals.subList(c * size() / chunks, (c+1) * size() / chunks);
+            bred.add(workers.submit(new Breeding(parents, mutations, Utils.random().nextLong())));
+        }
+        
+        Population offsprings = new Population(problem);
+        for (Future<List<Program>> chunk : bred)
+            for (Program o : Utils.await(chunk))
+                offsprings.addIndividual(o);
+        
+        return offsprings;
+    }
+    
+    /**
+     * Copies and mutates a chunk of the population on a worker thread.
+     */
+    private static class Breeding implements Callable<List<Program>>
+    {
+        /**
+         * Parents of the offspring.
+         */
+        private List<Program> parents;
+        
+        /**
+         * Mutations to apply to each offspring.
+         */
+        private List<Mutation> mutations;
+        
+        /**
+         * Seed of the random stream of the chunk.
+         */
+        private long seed;
+        
+        /**
+         * Constructor.
+         * 
+         * @param parents parents of the offspring
+         * @param mutations mutations to apply to each offspring
+         * @param seed seed of the random stream of the chunk
+         */
+        public Breeding(List<Program> parents, List<Mutation> mutations, long seed)
+        {
+            this.parents = parents;
+            this.mutations = mutations;
+            this.seed = seed;
+        }
+        
+        @Override
+        public List<Program> call()
+        {
+            Utils.setStream(new Random(seed));
+            try {
+                List<Program> offsprings = new ArrayList<Program>(parents.size());
+                for (Program p : parents)
+                {
+                    Program o = new Program(p);
+                    for (Mutation m : mutations)
+                        o.applyMutation(m);
+                    offsprings.add(o);
+                }
+                return offsprings;
+            } finally {
+                Utils.setStream(null);
+            }
+        }
+    }
+    
     /**
      * Recompute complexity of individual with maximum complexity. For stats.
      */
@@ -125,6 +223,7 @@ public final class Population implements Cloneable {
     public void select(Selection s, Population mutated) throws MaximumEvaluationsExceeded
     {
         s.select(this, mutated);
+        s.completeEvaluations(this);
     }
     
     @Override
@@ -136,6 +235,51 @@ public final class Population implements Cloneable {
         return s;
     }
 
+    /**
+     * Turns the population into a view of a Pareto archive of its individuals,
+     * which must be evaluated and mutually non-dominated (see ParetoArchive), 
+     * with optimality judged by the fitness function of the problem, the first time
+     * it is called. From then on, the individuals can only be changed through
+     * the archive.
+     * 
+     * @return the archive of the individuals
+     */
+    public ParetoArchive getParetoArchive()
+    {
+        if (archive == null)
+        {
+            archive = new ParetoArchive(individuals, problem.getFitnessFunction());
+            individuals = archive.asList();
+        }
+        return archive;
+    }
+    
+    /**
+     * Identifies the best individual, through a tournament tree updated as 
+     * individuals are set, added and removed (or, for a view of a Pareto 
+     * archive, as its most complex individual), without reordering the 
+     * population. Ties are won by the first individual.
+     * 
+     * @param type type of the fitness function
+     * @return the best individual, null if the population is empty
+     */
+    public Program getBestIndividual(FunctionType type)
+    {
+        if (archive != null)
+            return archive.getMostComplex();
+        return tournament.best(individuals, type);
+    }
+    
+    /**
+     * Tells if the population is a view of a Pareto archive.
+     * 
+     * @return true if getParetoArchive() has been called
+     */
+    public boolean hasParetoArchive()
+    {
+        return archive != null;
+    }
+    
     /**
      * Retrieves an individual by index.
      * @param i individual index
@@ -154,6 +298,7 @@ public final class Population implements Cloneable {
     public void setIndividual(int i, Program p)
     {
         individuals.set(i, p);
+        tournament.update(i);
         
         // Find most complex program among remaining ones
         recomputeMaximumComplexity();
@@ -191,7 +336,7 @@ public final class Population implements Cloneable {
     {
         String s = "";
         for(Program i : getIndividuals())
-            s += "[F: "+ i.getCachedFitness() + ", C: "+ i.complexity()+"] " + problem.getFitnessFunction().normalize(i) + "\n";
+            s += "[F: "+ i.getCachedFitness() + ", C: "+ i.complexity()+"] " + Arrays.toString(problem.getFitnessFunction().cachedPhenotype(i)) + "\n";
         return s;
     }
     
@@ -203,6 +348,7 @@ public final class Population implements Cloneable {
     public void addIndividual(Program p)
     {
         individuals.add(p);
+        tournament.append(individuals.size() - 1);
         
         // Update complexity
         if (p.complexity() > maximumComplexity)
@@ -217,6 +363,7 @@ public final class Population implements Cloneable {
     public void removeIndividual(Program p)
     {
         individuals.remove(p);
+        tournament.invalidate();
         
         if (p.complexity() == maximumComplexity)
             // Find most complex program among remaining ones
@@ -241,7 +388,7 @@ public final class Population implements Cloneable {
      */
     public Program getRandomIndividual()
     {
-        return individuals.get(Utils.random.nextInt(size()));
+        return individuals.get(Utils.random().nextInt(size()));
     }
 
     /**
@@ -250,6 +397,8 @@ public final class Population implements Cloneable {
      * @return the complexity of the most complex individual.
      */
     public long getMaximumComplexity() {
+        if (archive != null)
+            return archive.getMaximumComplexity();
         return maximumComplexity;
     }
 }
@@ -25,13 +25,20 @@
 
 package gpframework.algorithms.components;
 
+import gpframework.algorithms.components.MutationEvent.Kind;
 import gpframework.common.exceptions.MaximumEvaluationsExceeded;
 import gpframework.common.exceptions.OptimumFoundException;
+import gpframework.indicators.DeltaFitnessFunction;
 import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.FitnessProfile;
 import gpframework.indicators.FitnessFunction.FunctionType;
 import gpframework.program.Program;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class which represents a selection criterion to decide which programs must
@@ -45,9 +52,70 @@ public abstract class Selection
     protected FitnessFunction fitnessFunction;
     
     /**
-     * Maximum number of evaluations.
+     * Remaining number of evaluations, shared with the evaluation service.
      */
-    protected long evaluationsBudget;
+    protected AtomicLong evaluationsBudget = new AtomicLong();
+    
+    /**
+     * Whether to update the fitness of offspring incrementally, when the 
+     * fitness function supports it.
+     */
+    protected boolean deltaEvaluation = true;
+    
+    /**
+     * Whether to cross-check incremental evaluations against full ones.
+     */
+    protected boolean deltaVerification = false;
+    
+    /**
+     * Number of evaluations performed incrementally.
+     */
+    protected long deltaEvaluations = 0;
+    
+    /**
+     * Whether to compare offspring which are not evaluated yet through 
+     * FitnessFunction.compareTo(), which can exit early.
+     */
+    protected boolean earlyExitComparison = true;
+    
+    /**
+     * Number of comparisons performed with early exit.
+     */
+    protected long earlyExitComparisons = 0;
+    
+    /**
+     * Programs whose evaluation has been charged by an early-exit comparison,
+     * but whose fitness is not cached yet.
+     */
+    protected Set<Program> chargedPrograms = Collections.newSetFromMap(new IdentityHashMap<Program, Boolean>());
+    
+    /**
+     * Cache of fitness values by phenotype, null if disabled.
+     */
+    protected FitnessCache fitnessCache;
+    
+    /**
+     * Whether cache hits are charged to the evaluations budget.
+     */
+    protected boolean cacheHitsCharged = true;
+    
+    /**
+     * Pool of threads evaluating batches of offspring in parallel, null if 
+     * disabled.
+     */
+    protected EvaluationService evaluationService;
+    
+    /**
+     * Whether offspring known to have the fitness of another program (e.g. of
+     * their parent, when the mutations left the labels unchanged) are given
+     * that fitness, without spending an evaluation.
+     */
+    protected boolean duplicateSkipping = false;
+    
+    /**
+     * Number of evaluations saved by skipping duplicate offspring.
+     */
+    protected long evaluationsSaved = 0;
     
     /**
      * Sets the fitness function to use for selection.
@@ -57,7 +125,124 @@ public abstract class Selection
     public void setFitnessFunction(FitnessFunction fitnessFunction, long evaluationsBudget)
     {
         this.fitnessFunction = fitnessFunction;
+        this.evaluationsBudget.set(evaluationsBudget);
+        this.deltaEvaluations = 0;
+        this.earlyExitComparisons = 0;
+        this.evaluationsSaved = 0;
+        this.chargedPrograms.clear();
+        this.fitnessCache = null;
+        this.evaluationService = null;
+    }
+    
+    /**
+     * Shares the evaluations budget with other selection criteria (e.g. of the
+     * other islands of an island model). The shared counter is adopted as it
+     * is: whoever owns it sets it once, before any evaluation is charged.
+     * 
+     * @param evaluationsBudget remaining evaluations, updated atomically
+     */
+    public void shareEvaluationsBudget(AtomicLong evaluationsBudget)
+    {
         this.evaluationsBudget = evaluationsBudget;
+        if (evaluationService != null)
+            evaluationService.setEvaluationsBudget(evaluationsBudget);
+    }
+    
+    /**
+     * Configures early-exit comparisons of offspring.
+     * 
+     * @param enabled whether to compare unevaluated offspring with early exit
+     */
+    public void setEarlyExitComparison(boolean enabled)
+    {
+        this.earlyExitComparison = enabled;
+    }
+    
+    /**
+     * Sets a cache of fitness values shared by all the evaluated programs.
+     * 
+     * @param fitnessCache cache to use, null to disable caching
+     * @param chargeHits whether cache hits spend one evaluation from the budget 
+     *        (i.e. the number of evaluations is independent of caching)
+     */
+    public void setFitnessCache(FitnessCache fitnessCache, boolean chargeHits)
+    {
+        this.fitnessCache = fitnessCache;
+        this.cacheHitsCharged = chargeHits;
+    }
+    
+    /**
+     * Sets a pool of threads evaluating batches of offspring in parallel (see
+     * evaluateAll()), which charges the evaluations budget of this selection.
+     * 
+     * @param evaluationService service to use, null to evaluate sequentially
+     */
+    public void setEvaluationService(EvaluationService evaluationService)
+    {
+        this.evaluationService = evaluationService;
+        if (evaluationService != null)
+        {
+            evaluationService.setEvaluationsBudget(evaluationsBudget);
+            evaluationService.setDeltaEvaluation(deltaEvaluation, deltaVerification);
+        }
+    }
+    
+    /**
+     * Gets the pool of threads evaluating offspring in parallel.
+     * 
+     * @return the evaluation service, null if evaluations are sequential
+     */
+    public EvaluationService getEvaluationService()
+    {
+        return evaluationService;
+    }
+    
+    /**
+     * Gets the cache of fitness values.
+     * 
+     * @return the fitness cache, null if caching is disabled
+     */
+    public FitnessCache getFitnessCache()
+    {
+        return fitnessCache;
+    }
+    
+    /**
+     * Configures incremental evaluation of offspring.
+     * 
+     * @param enabled whether to use incremental evaluation (if supported by the fitness function)
+     * @param verification whether to check each incremental evaluation against a full one
+     */
+    public void setDeltaEvaluation(boolean enabled, boolean verification)
+    {
+        this.deltaEvaluation = enabled;
+        this.deltaVerification = verification;
+        if (evaluationService != null)
+            evaluationService.setDeltaEvaluation(enabled, verification);
+    }
+    
+    /**
+     * Configures the skipping of the evaluation of duplicate offspring.
+     * 
+     * @param enabled whether offspring with unchanged labels (or, for selection
+     *        criteria supporting it, with the phenotype of an individual of the 
+     *        population) get their fitness without spending an evaluation
+     */
+    public void setDuplicateSkipping(boolean enabled)
+    {
+        this.duplicateSkipping = enabled;
+    }
+    
+    /**
+     * Tells if the evaluation of a program is skipped, because the mutations 
+     * applied since its last evaluation left its labels unchanged.
+     * 
+     * @param solution program to evaluate
+     * @return true if the program gets its parent fitness for free
+     */
+    public boolean skipsEvaluation(Program solution)
+    {
+        return duplicateSkipping && !solution.hasCachedFitness() && solution.hasUnchangedLabels();
     }
     
     public FitnessFunction getFitnessFunction()
@@ -88,54 +273,300 @@ public abstract class Selection
     protected int compare(Program original, Program mutated) throws MaximumEvaluationsExceeded
     {       
         // Check if there are any evaluations
-        if (evaluationsBudget == 0)
+        if (evaluationsBudget.get() <= 0)
             throw new MaximumEvaluationsExceeded();
         
         // Optimization factor, i.e. convert maximization functions into minimization functions
         int optimizationFactor = (fitnessFunction.getType() == FunctionType.MAXIMIZATION ? -1 : 1);
         
         
-        return evaluate(original).compareTo(evaluate(mutated)) * optimizationFactor;
+        evaluate(original);
+        
+        // The offspring is charged one evaluation, but only compared with the fitness of the original
+        if (isEarlyExitApplicable(mutated))
+        {
+            evaluationsBudget.decrementAndGet();
+            earlyExitComparisons++;
+            chargedPrograms.add(mutated);
+            return -fitnessFunction.compareTo(mutated, original.getCachedFitness()) * optimizationFactor;
+        }
+        
+        evaluate(mutated);
+        
+        return original.compareTo(mutated) * optimizationFactor;
     }
     
     /**
-     * Evaluates the quality of a program and caches the fitness value.
+     * Tells if a program should be compared with early exit, i.e. if it would
+     * be evaluated from scratch and it has not been compared this way yet 
+     * (further comparisons evaluate it instead). Incremental evaluation takes
+     * precedence, being cheaper than even an aborted full evaluation: early 
+     * exit covers the offspring it can't handle, e.g. the ones with several
+     * changes of the produced labels or bred by crossover.
+     * 
+     * @param solution program to compare
+     * @return true if the program should be compared with early exit
+     */
+    protected boolean isEarlyExitApplicable(Program solution)
+    {
+        if (!earlyExitComparison || solution.hasCachedFitness() || fitnessCache != null || chargedPrograms.contains(solution) || skipsEvaluation(solution))
+            return false;
+        
+        return !(deltaEvaluation && fitnessFunction instanceof DeltaFitnessFunction && isDeltaApplicable(solution));
+    }
+    
+    /**
+     * Tells if a program can be evaluated incrementally from its parent, i.e.
+     * if the fitness of its parent is known and at most one of the mutations
+     * applied since then changed the produced labels.
+     * 
      * @param solution program to evaluate
+     * @return true if the program can be evaluated incrementally
+     */
+    static boolean isDeltaApplicable(Program solution)
+    {
+        if (solution.getParentFitnessType() == null || solution.getPendingEvents() == null)
+            return false;
+        
+        int changes = 0;
+        for (MutationEvent e : solution.getPendingEvents())
+            if (e.getKind() != Kind.NONE)
+                changes++;
+        
+        return changes <= 1;
+    }
+    
+    /**
+     * Evaluates the individuals which have only been compared with early exit 
+     * (without spending further evaluations), so that every individual of the
+     * population has a cached fitness.
+     * 
+     * @param population population after selection
+     */
+    public void completeEvaluations(Population population)
+    {
+        for (Program p : population.getIndividuals())
+            evaluate(p);
+        
+        // Forget discarded offspring
+        chargedPrograms.clear();
+    }
+    
+    /**
+     * Evaluates a batch of programs in parallel through the evaluation service,
+     * if any, before selection. Programs already evaluated or charged, and 
+     * offspring which get their fitness for free, are left to evaluate() on
+     * the calling thread, as well as all the programs when the fitness cache 
+     * (which is not thread-safe) is enabled. When both incremental evaluation
+     * and the evaluation service are enabled, the evaluator threads update the 
+     * fitness of the parents incrementally whenever possible, and evaluate the
+     * other programs from scratch: the pool decides where, delta evaluation how.
      * 
-     * @return a fitness function value
+     * @param solutions programs to evaluate
+     * @throws MaximumEvaluationsExceeded if the maximum number of evaluations is reached
+     */
+    public void evaluateAll(List<Program> solutions) throws MaximumEvaluationsExceeded
+    {
+        if (evaluationService == null || fitnessCache != null)
+            return;
+        
+        List<Program> pending = new ArrayList<Program>(solutions.size());
+        for (Program p : solutions)
+            if (!p.hasCachedFitness() && !chargedPrograms.contains(p) && !skipsEvaluation(p))
+                pending.add(p);
+        
+        if (!pending.isEmpty())
+            evaluationService.evaluate(pending);
+    }
+    
+    /**
+     * Evaluates the quality of a program and caches the fitness value (see
+     * Program.getCachedFitness()), without boxing primitive fitness values.
+     * @param solution program to evaluate
      */
-    public Comparable evaluate(Program solution)
+    public void evaluate(Program solution)
     {
+        // Offspring with unchanged labels have the fitness of their parent
+        if (skipsEvaluation(solution))
+        {
+            solution.inheritParentFitness();
+            evaluationsSaved++;
+        }
+        
         // If we don't have a cached fitness we evaluate it, and spend one evaluation
-        if (solution.getCachedFitness() == null)
+        if (!solution.hasCachedFitness())
+        {
+            // Look up programs with the same phenotype (only hashed in large
+            // scale mode, so that it is never built on the heap)
+            long hash = 0;
+            int[] phenotype = null;
+            Comparable fitness = null;
+            if (fitnessCache != null)
+            {
+                hash = fitnessFunction.phenotypeHash(solution);
+                if (!fitnessFunction.isLargeScale())
+                    phenotype = fitnessFunction.cachedPhenotype(solution);
+                fitness = fitnessCache.get(hash, phenotype);
+            }
+            
+            // Programs compared with early exit have already been charged
+            boolean charged = chargedPrograms.remove(solution);
+            if (!charged && (fitness == null || cacheHitsCharged))
+                evaluationsBudget.decrementAndGet();
+            
+            if (fitness == null)
+            {
+                // Incremental evaluations count as evaluations as well
+                if (!(deltaEvaluation && fitnessFunction instanceof DeltaFitnessFunction && evaluateDelta(solution)))
+                    evaluateFully(solution);
+                
+                if (fitnessCache != null)
+                    fitnessCache.put(hash, phenotype, solution.getCachedFitness());
+            }
+            else
+                solution.setCachedFitness(fitness);
+        }
+    }
+    
+    /**
+     * Evaluates a program from scratch, keeping primitive fitness values unboxed.
+     * 
+     * @param solution program to evaluate
+     */
+    protected void evaluateFully(Program solution)
+    {
+        FitnessProfile profile = fitnessFunction.getProfile();
+        long started = profile == null ? 0 : System.nanoTime();
+        
+        switch (fitnessFunction.getValueType())
         {
-            evaluationsBudget--;
-            solution.setCachedFitness(fitnessFunction.evaluate(solution));
+            case INTEGER:
+            case LONG:
+                solution.setCachedFitness(fitnessFunction.evaluateLong(solution), fitnessFunction.getValueType());
+                break;
+            case DOUBLE:
+                solution.setCachedFitness(fitnessFunction.evaluateDouble(solution));
+                break;
+            default:
+                solution.setCachedFitness(fitnessFunction.evaluate(solution));
         }
         
-        return solution.getCachedFitness();
+        if (profile != null)
+            profile.recordEvaluation(solution, System.nanoTime() - started);
+    }
+    
+    /**
+     * Updates the fitness of the parent of a program according to the mutations
+     * applied since then. Only a single change of the produced labels is supported.
+     * 
+     * @param solution program to evaluate
+     * @return true if the fitness was cached on the program, false if a full
+     *         evaluation is needed
+     */
+    protected boolean evaluateDelta(Program solution)
+    {
+        List<MutationEvent> events = solution.getPendingEvents();
+        if (!evaluateDelta(fitnessFunction, solution))
+            return false;
+        
+        deltaEvaluations++;
+        
+        if (deltaVerification)
+            verifyDelta(fitnessFunction, solution, events);
+        
+        return true;
+    }
+    
+    /**
+     * Checks an incremental evaluation against a full one.
+     * 
+     * @param fitnessFunction fitness function
+     * @param solution program evaluated incrementally
+     * @param events mutation events the fitness was updated with
+     * @throws IllegalStateException if the fitness values differ
+     */
+    static void verifyDelta(FitnessFunction fitnessFunction, Program solution, List<MutationEvent> events)
+    {
+        Comparable full = fitnessFunction.evaluate(solution);
+        if (full.compareTo(solution.getCachedFitness()) != 0)
+            throw new IllegalStateException("Incremental fitness " + solution.getCachedFitness() + " differs from full evaluation " + full + " after " + events + " on " + solution);
+    }
+    
+    /**
+     * Updates the fitness of the parent of a program with a given incremental
+     * fitness function, without side effects on the selection criterion, so
+     * that evaluator threads can use it with their own copy of the function.
+     * 
+     * Primitive fitness values are updated through the primitive variants of 
+     * the function, and cached without boxing.
+     * 
+     * @param fitnessFunction incremental fitness function
+     * @param solution program to evaluate
+     * @return true if the fitness was cached on the program, false if a full
+     *         evaluation is needed
+     */
+    static boolean evaluateDelta(FitnessFunction fitnessFunction, Program solution)
+    {
+        if (!isDeltaApplicable(solution))
+            return false;
+        
+        // Find the only event which changed the produced labels
+        MutationEvent change = null;
+        for (MutationEvent e : solution.getPendingEvents())
+            if (e.getKind() != Kind.NONE)
+                change = e;
+        
+        if (change == null)
+        {
+            solution.inheritParentFitness();
+            return true;
+        }
+        
+        DeltaFitnessFunction delta = (DeltaFitnessFunction) fitnessFunction;
+        switch (solution.getParentFitnessType())
+        {
+            case INTEGER:
+            case LONG:
+                long longFitness = delta.evaluateDeltaLong(solution, solution.getParentLongFitness(), change);
+                if (longFitness == DeltaFitnessFunction.NO_DELTA)
+                    return false;
+                solution.setCachedFitness(longFitness, solution.getParentFitnessType());
+                return true;
+            case DOUBLE:
+                double doubleFitness = delta.evaluateDeltaDouble(solution, solution.getParentDoubleFitness(), change);
+                if (Double.isNaN(doubleFitness))
+                    return false;
+                solution.setCachedFitness(doubleFitness);
+                return true;
+            default:
+                Comparable fitness = delta.evaluateDelta(solution, solution.getParentFitness(), change);
+                if (fitness == null)
+                    return false;
+                solution.setCachedFitness(fitness);
+                return true;
+        }
     }
 
     /**
-     * Identifies the best individual in a population.
+     * Identifies the best individual in a population, without reordering it.
      * @param population the population to scan
      * @return the best individual
      */
     public Program getBestIndividual(Population population) {
 
-        // Get individuals
-        List<Program> individuals = population.getIndividuals();
-        
-        // Sort them according to fitness (either increasing or decreasing)
-        Collections.sort(individuals);
-
-        // Return first or last depending on function type
-        if (fitnessFunction.getType() == FunctionType.MAXIMIZATION)
-            return individuals.get(individuals.size()-1);
-        else
-            return individuals.get(0);
+        return population.getBestIndividual(fitnessFunction.getType());
     }
 
+    /**
+     * Gets the number of evaluations saved by skipping duplicate offspring.
+     * 
+     * @return the number of offspring which got their fitness for free
+     */
+    public long getEvaluationsSaved()
+    {
+        return evaluationsSaved;
+    }
+    
     /**
      * Gets the number of evaluations left.
      * 
@@ -143,7 +574,28 @@ public abstract class Selection
      */
     public long evaluationsLeft() 
     {
-        return evaluationsBudget;
+        return evaluationsBudget.get();
+    }
+    
+    /**
+     * Gets the number of evaluations performed incrementally, including the
+     * ones performed by the evaluation service.
+     * 
+     * @return the number of incremental evaluations
+     */
+    public long getDeltaEvaluations()
+    {
+        return deltaEvaluations + (evaluationService == null ? 0 : evaluationService.getDeltaEvaluations());
+    }
+    
+    /**
+     * Gets the number of comparisons performed with early exit.
+     * 
+     * @return the number of early-exit comparisons
+     */
+    public long getEarlyExitComparisons()
+    {
+        return earlyExitComparisons;
     }
     
     /**
@@ -43,7 +43,7 @@ public class SingleMutationFactory extends MutationFactory {
     public List<Mutation> generate(Problem problem) {
         List<Mutation> chosen = new ArrayList<Mutation>();
         
-        int pick = Utils.random.nextInt(3);
+        int pick = Utils.random().nextInt(3);
         
         switch(pick) 
         {
@@ -0,0 +1,205 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components;
+
+import gpframework.indicators.FitnessFunction.FunctionType;
+import gpframework.program.Program;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tournament tree over the individuals of a population, keyed on their cached
+ * fitness: each internal node holds the winner of the individuals below it, so
+ * that the root is the best individual. Changed positions are only marked when
+ * the population changes, and replayed (in O(log n) each) when the best
+ * individual is requested. Individuals without a cached fitness lose against
+ * evaluated ones, and are replayed at each request until they are evaluated;
+ * ties are won by the first individual.
+ */
+public class TournamentTree
+{
+    /**
+     * Winners of the nodes, as positions in the population (-1 if none): the
+     * root is node 1, the children of node k are 2k and 2k+1, the leaves start
+     * from node capacity.
+     */
+    private int[] winners = new int[0];
+
+    /**
+     * Number of leaves, a power of two.
+     */
+    private int capacity = 0;
+
+    /**
+     * Number of individuals in the tree.
+     */
+    private int size = 0;
+
+    /**
+     * Positions to replay at the next request.
+     */
+    private BitSet stale = new BitSet();
+
+    /**
+     * Whether the whole tree must be rebuilt at the next request.
+     */
+    private boolean invalid = true;
+
+    /**
+     * Type of the fitness function of the last request.
+     */
+    private FunctionType type;
+
+    /**
+     * Marks the individual at a position as changed.
+     *
+     * @param position position of the individual in the population
+     */
+    public void update(int position)
+    {
+        stale.set(position);
+    }
+
+    /**
+     * Marks an individual appended to the population.
+     *
+     * @param position position of the individual, i.e. the old size of the population
+     */
+    public void append(int position)
+    {
+        if (!invalid && position == size && size < capacity)
+        {
+            winners[capacity + size] = size;
+            stale.set(size);
+            size++;
+        }
+        else
+            invalidate();
+    }
+
+    /**
+     * Marks the whole population as changed, e.g. after individuals have been
+     * removed or all of them mutated.
+     */
+    public void invalidate()
+    {
+        invalid = true;
+        stale.clear();
+    }
+
+    /**
+     * Finds the best individual of the population.
+     *
+     * @param individuals individuals of the population
+     * @param type type of the fitness function
+     * @return the best individual, null if the population is empty
+     */
+    public Program best(List<Program> individuals, FunctionType type)
+    {
+        if (invalid || type != this.type || size != individuals.size())
+            rebuild(individuals, type);
+        else
+        {
+            // Replay the changed positions, keep the unevaluated ones for later
+            BitSet replayed = stale;
+            stale = new BitSet();
+            for (int i = replayed.nextSetBit(0); i >= 0; i = replayed.nextSetBit(i + 1))
+                replay(individuals, i);
+        }
+
+        return winners[1] < 0 ? null : individuals.get(winners[1]);
+    }
+
+    /**
+     * Rebuilds the whole tree in O(n).
+     *
+     * @param individuals individuals of the population
+     * @param type type of the fitness function
+     */
+    private void rebuild(List<Program> individuals, FunctionType type)
+    {
+        this.type = type;
+        size = individuals.size();
+        capacity = Integer.highestOneBit(Math.max(1, size));
+        if (capacity < size)
+            capacity <<= 1;
+        winners = new int[2 * capacity];
+
+        stale.clear();
+        for (int i = 0; i < capacity; i++)
+        {
+            winners[capacity + i] = i < size ? i : -1;
+            if (i < size && !individuals.get(i).hasCachedFitness())
+                stale.set(i);
+        }
+        for (int k = capacity - 1; k >= 1; k--)
+            winners[k] = winner(individuals, winners[2 * k], winners[2 * k + 1]);
+
+        invalid = false;
+    }
+
+    /**
+     * Replays the matches of an individual, from its leaf to the root.
+     *
+     * @param individuals individuals of the population
+     * @param position position of the individual
+     */
+    private void replay(List<Program> individuals, int position)
+    {
+        if (!individuals.get(position).hasCachedFitness())
+            stale.set(position);
+
+        for (int k = (capacity + position) / 2; k >= 1; k /= 2)
+            winners[k] = winner(individuals, winners[2 * k], winners[2 * k + 1]);
+    }
+
+    /**
+     * Plays a match between two individuals.
+     *
+     * @param individuals individuals of the population
+     * @param first position of the first individual (-1 if none)
+     * @param second position of the second individual (-1 if none), after the first one
+     * @return the position of the better individual, the first one on ties
+     */
+    private int winner(List<Program> individuals, int first, int second)
+    {
+        if (second < 0)
+            return first;
+        if (first < 0)
+            return second;
+
+        Program p = individuals.get(first), q = individuals.get(second);
+        if (!q.hasCachedFitness())
+            return first;
+        if (!p.hasCachedFitness())
+            return second;
+
+        int comparison = q.compareTo(p);
+        if (type == FunctionType.MINIMIZATION)
+            comparison = -comparison;
+        return comparison > 0 ? second : first;
+    }
+}
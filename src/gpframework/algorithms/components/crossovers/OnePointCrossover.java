@@ -0,0 +1,90 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components.crossovers;
+
+import gpframework.algorithms.components.Crossover;
+import gpframework.common.Utils;
+import gpframework.problems.Problem;
+import gpframework.program.Function;
+import gpframework.program.Program;
+import gpframework.program.Term;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One-point crossover (Poli and Langdon): both parents are traversed from the
+ * root, down through the functions which have the same arity in both of them,
+ * to find their common region. A random point of the common region is picked,
+ * and the subtree of the first parent at that point is replaced with the
+ * subtree of the donor at the same position, so that the offspring keeps the
+ * shape shared by the parents.
+ */
+public class OnePointCrossover extends Crossover
+{
+    /**
+     * Constructor.
+     *
+     * @param problem problem linked to this crossover
+     */
+    public OnePointCrossover(Problem problem)
+    {
+        super(problem);
+    }
+
+    @Override
+    protected void graft(Program offspring, Program donor)
+    {
+        // Nothing to take from an empty donor
+        if (donor.isEmpty())
+            return;
+
+        // Pairs of terms at the same position in both parents, in breadth-first order
+        List<Term> targets = new ArrayList<Term>();
+        List<Term> sources = new ArrayList<Term>();
+        targets.add(offspring.getRoot());
+        sources.add(donor.getRoot());
+
+        for (int i = 0; i < targets.size(); i++)
+        {
+            Term target = targets.get(i), source = sources.get(i);
+            if (!(target instanceof Function) || !(source instanceof Function))
+                continue;
+
+            Function f = (Function) target, g = (Function) source;
+            if (f.arity() != g.arity())
+                continue;
+
+            for (int d = 0; d < f.arity(); d++)
+            {
+                targets.add(f.getDescendant(d));
+                sources.add(g.getDescendant(d));
+            }
+        }
+
+        int point = Utils.random().nextInt(targets.size());
+        replace(targets.get(point), sources.get(point));
+    }
+}
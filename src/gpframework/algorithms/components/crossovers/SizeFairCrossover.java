@@ -0,0 +1,132 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components.crossovers;
+
+import gpframework.algorithms.components.Crossover;
+import gpframework.common.Utils;
+import gpframework.problems.Problem;
+import gpframework.program.Function;
+import gpframework.program.Program;
+import gpframework.program.Term;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Size-fair crossover (Langdon): replaces a random subtree of the first parent,
+ * of size l, with a subtree of the donor of size at most 2l+1, chosen so that
+ * on average the inserted subtree has the same size as the removed one, which
+ * limits bloat. A subtree of size l is chosen with probability 1/l; otherwise
+ * a smaller or a larger one is chosen, with the probabilities which make the
+ * expected size l, and the subtree is picked at random within its class. When
+ * there are no smaller or no larger candidates, the subtree is picked at random
+ * among all the candidates.
+ */
+public class SizeFairCrossover extends Crossover
+{
+    /**
+     * Constructor.
+     *
+     * @param problem problem linked to this crossover
+     */
+    public SizeFairCrossover(Problem problem)
+    {
+        super(problem);
+    }
+
+    @Override
+    protected void graft(Program offspring, Program donor)
+    {
+        // Nothing to take from an empty donor
+        if (donor.isEmpty())
+            return;
+
+        Term target = offspring.getRandomTerm();
+        int size = target.complexity();
+
+        // Candidates not larger than 2l+1, by size class
+        List<Term> smaller = new ArrayList<Term>(), equal = new ArrayList<Term>(), larger = new ArrayList<Term>();
+        long[] totals = new long[2];
+        collect(donor.getRoot(), size, smaller, equal, larger, totals);
+
+        List<Term> chosen;
+        if (smaller.isEmpty() || larger.isEmpty())
+        {
+            chosen = new ArrayList<Term>(smaller);
+            chosen.addAll(equal);
+            chosen.addAll(larger);
+        }
+        else
+        {
+            double meanSmaller = (double) totals[0] / smaller.size();
+            double meanLarger = (double) totals[1] / larger.size();
+            double pEqual = equal.isEmpty() ? 0 : 1.0 / size;
+            double pLarger = (1 - pEqual) * (size - meanSmaller) / (meanLarger - meanSmaller);
+
+            double r = Utils.random().nextDouble();
+            chosen = r < pEqual ? equal : (r < pEqual + pLarger ? larger : smaller);
+        }
+
+        replace(target, chosen.get(Utils.random().nextInt(chosen.size())));
+    }
+
+    /**
+     * Sorts the subtrees of a term into size classes, with respect to the size
+     * of the removed subtree.
+     *
+     * @param t root of the subtrees
+     * @param size size of the removed subtree
+     * @param smaller subtrees smaller than the removed one
+     * @param equal subtrees as large as the removed one
+     * @param larger subtrees larger than the removed one, but not larger than 2l+1
+     * @param totals total sizes of the smaller and larger subtrees
+     * @return the size of the term
+     */
+    private int collect(Term t, int size, List<Term> smaller, List<Term> equal, List<Term> larger, long[] totals)
+    {
+        int complexity = 1;
+        if (t instanceof Function)
+        {
+            Function f = (Function) t;
+            for (int d = 0; d < f.arity(); d++)
+                complexity += collect(f.getDescendant(d), size, smaller, equal, larger, totals);
+        }
+
+        if (complexity < size)
+        {
+            smaller.add(t);
+            totals[0] += complexity;
+        }
+        else if (complexity == size)
+            equal.add(t);
+        else if (complexity <= 2 * size + 1)
+        {
+            larger.add(t);
+            totals[1] += complexity;
+        }
+
+        return complexity;
+    }
+}
@@ -0,0 +1,57 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components.crossovers;
+
+import gpframework.algorithms.components.Crossover;
+import gpframework.problems.Problem;
+import gpframework.program.Program;
+
+/**
+ * Standard subtree crossover: replaces a random subtree of the first parent
+ * with a random subtree of the donor, regardless of their shapes and sizes.
+ */
+public class SubtreeCrossover extends Crossover
+{
+    /**
+     * Constructor.
+     *
+     * @param problem problem linked to this crossover
+     */
+    public SubtreeCrossover(Problem problem)
+    {
+        super(problem);
+    }
+
+    @Override
+    protected void graft(Program offspring, Program donor)
+    {
+        // Nothing to take from an empty donor
+        if (donor.isEmpty())
+            return;
+
+        replace(offspring.getRandomTerm(), donor.getRandomTerm());
+    }
+}
@@ -26,6 +26,8 @@
 package gpframework.algorithms.components.mutations;
 
 import gpframework.algorithms.components.Mutation;
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.algorithms.components.MutationEvent.Kind;
 import gpframework.common.exceptions.ArityException;
 import gpframework.problems.Problem;
 import gpframework.program.Function;
@@ -54,6 +56,7 @@ public class Deletion extends Mutation {
     public void apply(Terminal t)
     {
         Program program = t.getProgram();
+        MutationEvent deleted = new MutationEvent(Kind.DELETION, t.leafOffset(), t.getLabel(), null);
                 
         // Special handling if term being mutated is root
         if (t.isRoot())
@@ -62,6 +65,7 @@ public class Deletion extends Mutation {
             Term nil = problem.getNull();
             nil.setProgram(program);
             program.setRoot(nil);        
+            program.recordEvent(deleted);
             return;
         }
         
@@ -95,6 +99,7 @@ public class Deletion extends Mutation {
             } catch (ArityException ex) {
                 // Fail gently if no such functions are found
                 System.err.println("Can't find functions of arity " + (parent.arity()-1) + " to replace " + parent);
+                program.recordEvent(new MutationEvent());
                 return;
             }
             
@@ -106,6 +111,8 @@ public class Deletion extends Mutation {
             // Replace parent with (n-1)-ary function
             parent.getParent().replaceDescendant(parent, n);
         }
+        
+        program.recordEvent(deleted);
     }
 
     @Override
@@ -113,7 +120,10 @@ public class Deletion extends Mutation {
     {    
         // If the program is empty (e.g. contains only a null node)
         if (program.isEmpty())
+        {
+            program.recordEvent(new MutationEvent());
             return;
+        }
 
         // Otherwise apply mutation on random terminal
         program.getRandomTerminal().applyMutation(this);
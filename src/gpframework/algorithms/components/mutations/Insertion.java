@@ -26,6 +26,8 @@
 package gpframework.algorithms.components.mutations;
 
 import gpframework.algorithms.components.Mutation;
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.algorithms.components.MutationEvent.Kind;
 import gpframework.common.Utils;
 import gpframework.problems.Problem;
 import gpframework.program.Function;
@@ -60,7 +62,7 @@ public class Insertion extends Mutation
         f.setProgram(t.getProgram());
 
         // Choose random descendant to attach old term
-        int tPlace = Utils.random.nextInt(f.arity());
+        int tPlace = Utils.random().nextInt(f.arity());
         
         // Fill the function with random descendants
         for (int i = 0; i < f.arity(); i++) {
@@ -77,6 +79,16 @@ public class Insertion extends Mutation
             parent.replaceDescendant(t, f);
         else
             t.getProgram().setRoot(f);
+        
+        // Record inserted labels, left to right
+        for (int i = 0; i < f.arity(); i++) 
+        {
+            if (i != tPlace)
+            {
+                Terminal nu = (Terminal) f.getDescendant(i);
+                t.getProgram().recordEvent(new MutationEvent(Kind.INSERTION, nu.leafOffset(), null, nu.getLabel()));
+            }
+        }
     }
 
     @Override
@@ -88,6 +100,7 @@ public class Insertion extends Mutation
             Terminal nu = problem.getTerminal();
             nu.setProgram(program);
             program.setRoot(nu);
+            program.recordEvent(new MutationEvent(Kind.INSERTION, 0, null, nu.getLabel()));
         }
         else
             program.getRandomTerm().applyMutation(this);
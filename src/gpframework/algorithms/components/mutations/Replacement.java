@@ -26,6 +26,8 @@
 package gpframework.algorithms.components.mutations;
 
 import gpframework.algorithms.components.Mutation;
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.algorithms.components.MutationEvent.Kind;
 import gpframework.common.exceptions.ArityException;
 import gpframework.problems.Problem;
 import gpframework.program.Function;
@@ -60,6 +62,7 @@ public class Replacement extends Mutation
         } catch (ArityException ex) {
             // Fail gently
             System.err.println("Can't find any function with arity " + f.arity() + " to replace " + f);
+            f.getProgram().recordEvent(new MutationEvent());
             return;
         }
                 
@@ -72,6 +75,9 @@ public class Replacement extends Mutation
             f.getParent().replaceDescendant(f, n);
         else
             f.getProgram().setRoot(n);
+        
+        // Produced labels are unchanged
+        f.getProgram().recordEvent(new MutationEvent());
     }
     
     @Override
@@ -81,19 +87,25 @@ public class Replacement extends Mutation
         Terminal r = problem.getTerminal();
                 
         r.setProgram(t.getProgram());
+        MutationEvent replaced = new MutationEvent(Kind.REPLACEMENT, t.leafOffset(), t.getLabel(), r.getLabel());
         
         // Replace t
         if (t.isRoot()) 
             t.getProgram().setRoot(r);
         else
             t.getParent().replaceDescendant(t, r);        
+        
+        t.getProgram().recordEvent(replaced);
     }
 
     @Override
     public void apply(Program program) 
     {
         if (program.isEmpty())
+        {
+            program.recordEvent(new MutationEvent());
             return;
+        }
         
         // Can be applied to any term 
         program.getRandomTerm().applyMutation(this);
@@ -25,17 +25,26 @@
 
 package gpframework.algorithms.components.selections;
 
+import gpframework.algorithms.components.ParetoArchive;
 import gpframework.algorithms.components.Population;
 import gpframework.algorithms.components.Selection;
 import gpframework.common.exceptions.MaximumEvaluationsExceeded;
+import gpframework.indicators.MultiFidelityFitness;
 import gpframework.program.Program;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /** 
  * Multi-objective selection criterion for SMO-GP. First removes all previous
  * individuals which are dominated by offspring, then adds offspring to the
- * population if there is non-dominated by any previous individual. 
+ * population if there is non-dominated by any previous individual. With a 
+ * MultiFidelityFitness, offspring are screened by its proxy first, and the
+ * proxy evaluations are charged to the evaluations budget at their cost. The 
+ * population is kept as a view of a ParetoArchive, so that only the 
+ * individuals next to the offspring in complexity are compared with it, and
+ * (if duplicate skipping is enabled) offspring with the phenotype of an 
+ * individual get its fitness without being evaluated.
  */
 public class SMOGPSelection extends Selection
 {
@@ -44,21 +53,93 @@ public class SMOGPSelection extends Selection
     {       
         // Mutated population is only 1-sized
         Program o = mutated.getIndividual(0);
-        List<Program> weaklyDominated = new ArrayList<Program>();
-
-        // If some solution in the population dominates o, keep the population as is        
-        for (Program i : original.getIndividuals())
+        
+        // The archive tells the optimality of evaluated individuals only
+        if (!original.hasParetoArchive())
+            super.completeEvaluations(original);
+        ParetoArchive archive = original.getParetoArchive();
+        
+        // An offspring with the phenotype of an individual has its fitness
+        if (duplicateSkipping && !o.hasCachedFitness() && !skipsEvaluation(o))
+        {
+            Program twin = archive.findPhenotype(o);
+            if (twin != null)
+            {
+                o.setCachedFitness(twin.getCachedFitness());
+                evaluationsSaved++;
+            }
+        }
+        
+        // Discard o without evaluating it if a cheap proxy says it is dominated,
+        // charging the proxy evaluations to the budget at their cost (offspring
+        // with a fitness already have nothing to save)
+        if (fitnessFunction instanceof MultiFidelityFitness && !o.hasCachedFitness())
         {
-            if (dominates(i,o)) return;
-            if (weaklyDominates(o,i))
-                weaklyDominated.add(i);      
+            MultiFidelityFitness multiFidelity = (MultiFidelityFitness) fitnessFunction;
+            if (evaluationsBudget.get() <= 0)
+                throw new MaximumEvaluationsExceeded();
+            boolean screened = multiFidelity.mightBeNonDominated(o, original.getIndividuals());
+            evaluationsBudget.addAndGet(-multiFidelity.takeProxyCharge());
+            if (!screened)
+                return;
         }
+
+        // The fittest solution not more complex than o is the only one which 
+        // can dominate it: if it does, keep the population as is
+        Program fittest = archive.floor(o.complexity());
+        if (fittest != null && dominates(fittest, o, compare(fittest, o)))
+            return;
         
-        // Remove from population solutions which are weakly dominated by o
-        original.getIndividuals().removeAll(weaklyDominated);
+        // Find the solutions which are weakly dominated by o, i.e. the least 
+        // fit among the ones not less complex than o; they are only removed
+        // once all the comparisons succeeded, so that running out of budget 
+        // leaves the population as is
+        List<Program> dominated = new ArrayList<Program>();
+        Iterator<Program> candidates = archive.ceiling(o.complexity());
+        while (candidates.hasNext())
+        {
+            Program i = candidates.next();
+            if (!weaklyDominates(o, i, -compare(i, o)))
+                break;
+            dominated.add(i);
+        }
         
-        // Add o to the population
-        original.addIndividual(o);
+        // Replace them with o, evaluating it if only compared with early exit
+        evaluate(o);
+        for (Program i : dominated)
+            archive.remove(i);
+        archive.add(o);
+    }
+    
+    /**
+     * Only the offspring added by select() may lack a cached fitness, and it
+     * has already been evaluated there: just forgets the discarded offspring,
+     * without scanning the archive.
+     * 
+     * @param population population after selection
+     */
+    @Override
+    public void completeEvaluations(Population population)
+    {
+        if (population.hasParetoArchive())
+            chargedPrograms.clear();
+        else
+            super.completeEvaluations(population);
+    }
+    
+    /**
+     * Identifies the best individual of a population kept by this criterion,
+     * i.e. the most complex one, without scanning it.
+     * 
+     * @param population the population to scan
+     * @return the best individual
+     */
+    @Override
+    public Program getBestIndividual(Population population)
+    {
+        if (population.hasParetoArchive())
+            return population.getParetoArchive().getMostComplex();
+        return super.getBestIndividual(population);
     }
     
     /**
@@ -71,12 +152,12 @@ public class SMOGPSelection extends Selection
      * 
      * @param p1 first program 
      * @param p2 second program
+     * @param comparison fitness comparison of the programs, i.e. compare(p1,p2)
      * @return true if the first program weakly dominates the second one
-     * @throws MaximumEvaluationsExceeded upon exhaustion of evaluations budget
      */
-    private boolean weaklyDominates(Program p1, Program p2) throws MaximumEvaluationsExceeded
+    private boolean weaklyDominates(Program p1, Program p2, int comparison)
     {
-        return ( compare(p1,p2) <= 0 && p1.complexity() <= p2.complexity());
+        return ( comparison <= 0 && p1.complexity() <= p2.complexity());
     }
     
     /**
@@ -89,12 +170,12 @@ public class SMOGPSelection extends Selection
      * 
      * @param p1 first program 
      * @param p2 second program
+     * @param comparison fitness comparison of the programs, i.e. compare(p1,p2)
      * @return true if the first program weakly dominates the second one
-     * @throws MaximumEvaluationsExceeded upon exhaustion of evaluations budget
      */
-    private boolean dominates(Program p1, Program p2) throws MaximumEvaluationsExceeded
+    private boolean dominates(Program p1, Program p2, int comparison)
     {
-        return ( weaklyDominates(p1,p2) && ( compare(p1,p2) < 0 || p1.complexity() < p2.complexity()));
+        return ( weaklyDominates(p1,p2,comparison) && ( comparison < 0 || p1.complexity() < p2.complexity()));
     }
     
 }
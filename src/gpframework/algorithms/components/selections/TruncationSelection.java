@@ -0,0 +1,79 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.algorithms.components.selections;
+
+import gpframework.algorithms.components.Population;
+import gpframework.algorithms.components.Selection;
+import gpframework.common.exceptions.MaximumEvaluationsExceeded;
+import gpframework.indicators.FitnessFunction.FunctionType;
+import gpframework.program.Program;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This selection criterion implements the plus-selection of (mu+lambda)
+ * algorithms: parents and offspring (possibly more than the parents) compete
+ * together, and the best ones, by fitness and then by complexity, make up the
+ * new population. On complete ties offspring are preferred, so that the
+ * population can drift across plateaus of the fitness.
+ */
+public class TruncationSelection extends Selection
+{
+    @Override
+    public void select(Population original, Population mutated) throws MaximumEvaluationsExceeded
+    {
+        // Offspring first, so that the stable sort prefers them on ties
+        List<Program> candidates = new ArrayList<Program>(original.size() + mutated.size());
+        candidates.addAll(mutated.getIndividuals());
+        candidates.addAll(original.getIndividuals());
+        
+        // The initial population is only evaluated at the first selection
+        for (Program p : candidates)
+        {
+            if (!p.hasCachedFitness() && evaluationsBudget.get() <= 0)
+                throw new MaximumEvaluationsExceeded();
+            evaluate(p);
+        }
+
+        final int optimizationFactor = (fitnessFunction.getType() == FunctionType.MAXIMIZATION ? -1 : 1);
+        Collections.sort(candidates, new Comparator<Program>()
+        {
+            @Override
+            public int compare(Program p, Program q)
+            {
+                int comparison = p.compareTo(q) * optimizationFactor;
+                if (comparison != 0)
+                    return comparison;
+                return p.complexity() - q.complexity();
+            }
+        });
+
+        for (int i = 0; i < original.size(); i++)
+            original.setIndividual(i, candidates.get(i));
+    }
+}
@@ -112,4 +112,15 @@ public class Configurable
     {
         return Integer.parseInt(getParameter(name));
     }
+    
+    /**
+     * Parses a parameter as Boolean
+     * 
+     * @param name name of the parameter
+     * @return a Boolean representing the value of the parameter
+     */
+    public Boolean getBooleanParameter(String name) 
+    {
+        return Boolean.parseBoolean(getParameter(name));
+    }
 }
@@ -26,6 +26,8 @@
 package gpframework.common;
 
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  *  Utilities.
@@ -40,5 +42,57 @@ public class Utils {
     
     public static Random random = new Random(21);
     
+    /**
+     * Random streams overriding the shared generator on worker threads.
+     */
+    private static ThreadLocal<Random> streams = new ThreadLocal<Random>();
+    
     public static boolean debug = false;    
+    
+    /**
+     * Random generator of the current thread: its own stream if it has been
+     * set, the shared generator otherwise.
+     * 
+     * @return the random generator to use
+     */
+    public static Random random()
+    {
+        Random stream = streams.get();
+        return stream == null ? random : stream;
+    }
+    
+    /**
+     * Sets the random stream of the current thread.
+     * 
+     * @param stream random generator of the thread, null to use the shared one
+     */
+    public static void setStream(Random stream)
+    {
+        if (stream == null)
+            streams.remove();
+        else
+            streams.set(stream);
+    }
+    
+    /**
+     * Waits for the result of a task run by a worker thread, rethrowing its
+     * runtime exceptions.
+     * 
+     * @param <T> type of the result
+     * @param result pending result
+     * @return the result of the task
+     */
+    public static <T> T await(Future<T> result)
+    {
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a worker", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException("Worker failed", ex.getCause());
+        }
+    }
 }
@@ -25,15 +25,40 @@
 
 package gpframework.indicators;
 
+import java.util.Arrays;
+
 /**
  * Comparable bit array to represent fitness in position-weighted fitness functions.
+ * Bits are packed 64 per long word, most significant first (bit 0 is the highest
+ * bit of the first word), so that the lexicographic order on bits is the unsigned 
+ * order on words.
  */
 public class BitArray implements Comparable 
 {   
     /**
-     * Bits in the fitness value.
+     * Number of bits in a word.
+     */
+    private static final int WORD_SIZE = 64;
+    
+    /**
+     * Packed bits in the fitness value, unused bits of the last word are zero.
+     */
+    private long[] words;
+    
+    /**
+     * Number of bits.
+     */
+    private int size;
+    
+    /**
+     * Cached hash code, valid only if hashValid is true.
+     */
+    private int hash;
+    
+    /**
+     * Whether hash must be recomputed.
      */
-    public int[] bits;
+    private boolean hashValid = false;
 
     /**
      * Constructor.
@@ -42,17 +67,81 @@ public class BitArray implements Comparable
      */
     public BitArray(int n)
     {
-        bits = new int[n];
+        size = n;
+        words = new long[(n + WORD_SIZE - 1) / WORD_SIZE];
     }
     
     /**
      * Constructor.
      * 
-     * @param initialBits initial set of bits.
+     * @param initialBits initial set of bits (one 0/1 value per int).
      */
     public BitArray(int[] initialBits)
     {
-        bits = initialBits;
+        this(initialBits.length);
+        for(int i = 0; i < initialBits.length; i++)
+            set(i, initialBits[i]);
+    }
+    
+    /**
+     * Copy constructor.
+     * 
+     * @param other bit array to replicate
+     */
+    public BitArray(BitArray other)
+    {
+        size = other.size;
+        words = other.words.clone();
+    }
+    
+    /**
+     * Retrieves a bit.
+     * 
+     * @param i position of the bit, 0 is the most significant
+     * @return 1 if the bit is set, 0 otherwise
+     */
+    public int get(int i)
+    {
+        checkIndex(i);
+        return (int) ((words[i / WORD_SIZE] >>> (WORD_SIZE - 1 - i % WORD_SIZE)) & 1L);
+    }
+    
+    /**
+     * Sets a bit to 1.
+     * 
+     * @param i position of the bit, 0 is the most significant
+     */
+    public void set(int i)
+    {
+        checkIndex(i);
+        words[i / WORD_SIZE] |= mask(i);
+        hashValid = false;
+    }
+    
+    /**
+     * Sets a bit to 0.
+     * 
+     * @param i position of the bit, 0 is the most significant
+     */
+    public void clear(int i)
+    {
+        checkIndex(i);
+        words[i / WORD_SIZE] &= ~mask(i);
+        hashValid = false;
+    }
+    
+    /**
+     * Sets a bit to a value.
+     * 
+     * @param i position of the bit, 0 is the most significant
+     * @param value 0 or 1
+     */
+    public void set(int i, int value)
+    {
+        if (value == 0)
+            clear(i);
+        else
+            set(i);
     }
     
     /**
@@ -60,8 +149,54 @@ public class BitArray implements Comparable
      */
     public void negate()
     {
-        for(int i = 0; i < bits.length; i++)
-            bits[i] = 1 - bits[i];
+        for(int w = 0; w < words.length; w++)
+            words[w] = ~words[w];
+        
+        // Keep unused bits of the last word at zero
+        int used = size % WORD_SIZE;
+        if (used != 0)
+            words[words.length-1] &= -1L << (WORD_SIZE - used);
+        
+        hashValid = false;
+    }
+    
+    /**
+     * Counts the bits set to 1.
+     * 
+     * @return the number of bits set
+     */
+    public int cardinality()
+    {
+        int count = 0;
+        for(long w : words)
+            count += Long.bitCount(w);
+        return count;
+    }
+    
+    /**
+     * Tells if the set bits are exactly the first ones, i.e. if this array
+     * equals an array of the same size with only bits 0 to count-1 set.
+     * 
+     * @param count number of leading bits which must be set
+     * @return true if bits 0 to count-1 are set and the others are clear
+     */
+    public boolean isPrefix(int count)
+    {
+        int full = count / WORD_SIZE, rest = count % WORD_SIZE;
+        
+        for(int w = 0; w < words.length; w++)
+        {
+            long expected = 0;
+            if (w < full)
+                expected = -1L;
+            else if (w == full && rest != 0)
+                expected = -1L << (WORD_SIZE - rest);
+            
+            if (words[w] != expected)
+                return false;
+        }
+        
+        return true;
     }
     
     @Override
@@ -72,18 +207,19 @@ public class BitArray implements Comparable
         
         BitArray other = (BitArray) t;
         
-        if (other.bits.length != this.bits.length)
+        if (other.size != this.size)
             throw new UnsupportedOperationException("Can't compare BitArrays of different size!");
         
         if (this == other)
             return 0;
         
-        for(int i = 0; i < bits.length; i++)
+        for(int w = 0; w < words.length; w++)
         {
-            if (bits[i] == other.bits[i])
+            if (words[w] == other.words[w])
                 continue;
             
-            if (bits[i] == 1)
+            // Unsigned comparison (flipping the sign bit preserves the order)
+            if ((words[w] ^ Long.MIN_VALUE) > (other.words[w] ^ Long.MIN_VALUE))
                 return 1;
             else
                 return -1;
@@ -93,6 +229,30 @@ public class BitArray implements Comparable
         
     }
     
+    @Override
+    public boolean equals(Object t)
+    {
+        if (this == t)
+            return true;
+        
+        if (!(t instanceof BitArray))
+            return false;
+        
+        BitArray other = (BitArray) t;
+        return size == other.size && hashCode() == other.hashCode() && Arrays.equals(words, other.words);
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        if (!hashValid)
+        {
+            hash = 31 * Arrays.hashCode(words) + size;
+            hashValid = true;
+        }
+        return hash;
+    }
+    
     /**
      * Gets array length.
      * 
@@ -100,18 +260,40 @@ public class BitArray implements Comparable
      */
     public int size()
     {
-        return bits.length;
+        return size;
     }
     
     @Override
     public String toString()
     {
-        String s = "";
+        StringBuilder s = new StringBuilder(2 * size);
         
-        for(int e : bits)
-            s += e + " ";
+        for(int i = 0; i < size; i++)
+            s.append(get(i)).append(' ');
         
-        return s;
+        return s.toString();
+    }
+    
+    /**
+     * Word mask selecting a bit.
+     * 
+     * @param i position of the bit
+     * @return a word with only bit i set
+     */
+    private static long mask(int i)
+    {
+        return 1L << (WORD_SIZE - 1 - i % WORD_SIZE);
+    }
+    
+    /**
+     * Checks that a bit position is within bounds.
+     * 
+     * @param i position of the bit
+     */
+    private void checkIndex(int i)
+    {
+        if (i < 0 || i >= size)
+            throw new ArrayIndexOutOfBoundsException(i);
     }
 
 }
@@ -0,0 +1,80 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.program.Program;
+
+/**
+ * Extension for fitness functions which can update the fitness of a parent 
+ * program from the description of a mutation, instead of evaluating the 
+ * offspring from scratch. Like FitnessFunction.evaluateLong() and 
+ * evaluateDouble(), the primitive variants avoid boxing the fitness values
+ * of numeric types: evaluateDelta() is the generic fallback.
+ */
+public interface DeltaFitnessFunction 
+{
+    /**
+     * Value returned by evaluateDeltaLong() when a full evaluation is needed.
+     */
+    public static final long NO_DELTA = Long.MIN_VALUE;
+    
+    /**
+     * Computes the fitness of a mutated program from the fitness of the program
+     * it was obtained from. 
+     * 
+     * @param solution mutated program
+     * @param parentFitness fitness of the program before the mutation
+     * @param event effect of the mutation on the labels produced by the program
+     * @return the fitness of the mutated program, or null if it can't be 
+     *         computed incrementally (a full evaluation is needed)
+     */
+    public Comparable evaluateDelta(Program solution, Comparable parentFitness, MutationEvent event);
+    
+    /**
+     * Computes the fitness of a mutated program from the fitness of the program
+     * it was obtained from, for functions of type INTEGER or LONG. 
+     * 
+     * @param solution mutated program
+     * @param parentFitness fitness of the program before the mutation
+     * @param event effect of the mutation on the labels produced by the program
+     * @return the fitness of the mutated program, or NO_DELTA if it can't be 
+     *         computed incrementally
+     */
+    public long evaluateDeltaLong(Program solution, long parentFitness, MutationEvent event);
+    
+    /**
+     * Computes the fitness of a mutated program from the fitness of the program
+     * it was obtained from, for functions of type DOUBLE. 
+     * 
+     * @param solution mutated program
+     * @param parentFitness fitness of the program before the mutation
+     * @param event effect of the mutation on the labels produced by the program
+     * @return the fitness of the mutated program, or NaN if it can't be 
+     *         computed incrementally
+     */
+    public double evaluateDeltaDouble(Program solution, double parentFitness, MutationEvent event);
+}
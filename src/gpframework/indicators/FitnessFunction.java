@@ -2,6 +2,8 @@ package gpframework.indicators;
 
 import gpframework.common.exceptions.OptimumFoundException;
 import gpframework.program.Program;
+import java.nio.IntBuffer;
+import java.util.List;
 
 /**
  * The base class for fitness indicators.
@@ -28,11 +30,51 @@ public abstract class FitnessFunction {
         MAXIMIZATION
     }
     
+    /**
+     * Type of the fitness values (values of primitive types can be computed
+     * through evaluateLong() or evaluateDouble() without boxing).
+     */
+    public enum ValueType
+    {
+        INTEGER,
+        LONG,
+        DOUBLE,
+        OBJECT
+    }
+    
     /**
      * Type of the function.
      */
     protected FunctionType type;
     
+    /**
+     * Optimal fitness values indexed by complexity (from 0 to 2n-1), for
+     * fitness functions with integral optimal values, see tabulateOptimum().
+     */
+    protected long[] optimumByComplexity;
+    
+    /**
+     * Whether the fitness kernels supporting it read the labels of solutions
+     * from a reusable off-heap buffer (for very large n), see collectOffHeap().
+     */
+    protected boolean largeScale = false;
+    
+    /**
+     * Off-heap buffer for the labels of the solution being evaluated.
+     */
+    protected OffHeapIntBuffer offHeapLabels;
+    
+    /**
+     * Timing profile of the evaluations, shared with the copies of this
+     * function, null if profiling is disabled.
+     */
+    protected FitnessProfile profile;
+    
+    /**
+     * Whether phenotypes are cached on the programs, see cachedPhenotype().
+     */
+    protected boolean phenotypeCaching = true;
+    
     /**
      * Constructor.
      * 
@@ -43,6 +85,28 @@ public abstract class FitnessFunction {
         this.type = type;
     }
     
+    /**
+     * Creates an independent instance of this fitness function, with the same
+     * parameters but its own scratch buffers, so that the two instances can
+     * evaluate solutions on different threads. By default, instantiates the 
+     * same class through its constructor taking n.
+     * 
+     * @return a copy of this fitness function
+     */
+    public FitnessFunction copy()
+    {
+        FitnessFunction copy;
+        try {
+            copy = getClass().getConstructor(int.class).newInstance(n);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Can't copy " + getClass().getSimpleName(), ex);
+        }
+        
+        copy.setLargeScale(largeScale);
+        copy.setProfile(profile);
+        return copy;
+    }
+    
     /**
      * Abstract method to evaluate the quality of a solution.
      * 
@@ -52,6 +116,106 @@ public abstract class FitnessFunction {
      */
     public abstract Comparable evaluate(Program solution);
     
+    /**
+     * Type of the values returned by evaluate().
+     * 
+     * @return the type of fitness values (def. OBJECT)
+     */
+    public ValueType getValueType()
+    {
+        return ValueType.OBJECT;
+    }
+    
+    /**
+     * Evaluates a solution into a primitive value, only for fitness functions 
+     * with INTEGER or LONG values. Should be overridden to avoid boxing.
+     * 
+     * @param solution solution to evaluate
+     * @return the fitness value
+     */
+    public long evaluateLong(Program solution)
+    {
+        return ((Number) evaluate(solution)).longValue();
+    }
+    
+    /**
+     * Evaluates a solution into a primitive value, only for fitness functions 
+     * with DOUBLE values. Should be overridden to avoid boxing.
+     * 
+     * @param solution solution to evaluate
+     * @return the fitness value
+     */
+    public double evaluateDouble(Program solution)
+    {
+        return ((Number) evaluate(solution)).doubleValue();
+    }
+    
+    /**
+     * Boxes an integral fitness value according to the value type.
+     * 
+     * @param fitness fitness value
+     * @return an Integer if the value type is INTEGER, a Long otherwise
+     */
+    protected Comparable boxed(long fitness)
+    {
+        if (getValueType() == ValueType.INTEGER)
+            return (int) fitness;
+        return fitness;
+    }
+    
+    /**
+     * Compares the fitness of a solution with a threshold, deciding as soon as
+     * the measure allows it (e.g. when a monotone prefix sum exceeds the 
+     * threshold) instead of computing the whole fitness. Evaluates the 
+     * solution by default.
+     * 
+     * @param solution solution to compare
+     * @param threshold fitness value to compare with
+     * @return -1, 0 or 1 as the fitness of the solution is less than, equal to
+     *         or greater than the threshold
+     */
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        switch (getValueType())
+        {
+            case INTEGER:
+            case LONG:
+                return compare(evaluateLong(solution), ((Number) threshold).longValue());
+            default:
+                return Integer.signum(evaluate(solution).compareTo(threshold));
+        }
+    }
+    
+    /**
+     * Compares two primitive fitness values.
+     * 
+     * @param first first value
+     * @param second second value
+     * @return -1, 0 or 1 as the first value is less than, equal to or greater
+     *         than the second one
+     */
+    protected static int compare(long first, long second)
+    {
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+    
+    /**
+     * Evaluates a batch of solutions into primitive values, only for fitness 
+     * functions with INTEGER or LONG values (used by the chunks of the 
+     * EvaluationService). Should be overridden with kernels running over a 
+     * PhenotypeBatch, evaluates each solution by default.
+     * 
+     * @param solutions solutions to evaluate
+     * @return the fitness values, in the same order
+     */
+    public long[] evaluateBatchLong(List<Program> solutions)
+    {
+        long[] fitness = new long[solutions.size()];
+        for (int i = 0; i < fitness.length; i++)
+            fitness[i] = evaluateLong(solutions.get(i));
+        return fitness;
+    }
+    
     /**
      * Abstract method to normalize a solution before feeding it into the fitness function.
      * 
@@ -62,6 +226,129 @@ public abstract class FitnessFunction {
     {
         return solution.parse();
     }
+    
+    /**
+     * Normalized solution as a primitive array of labels. Solutions with equal
+     * phenotypes must have equal fitness values.
+     * 
+     * @param solution solution to normalize
+     * @return labels of the normalized solution (def. all the produced labels)
+     */
+    public int[] phenotype(Program solution)
+    {
+        return solution.getLabels();
+    }
+    
+    /**
+     * Normalized solution as a buffer of labels, for hashing. Functions with
+     * off-heap kernels override it to normalize the solution in place in the
+     * off-heap label buffer in large scale mode, so that the phenotype is never
+     * built on the heap.
+     * 
+     * @param solution solution to normalize
+     * @return labels of the normalized solution, from position zero to the 
+     *         limit (def. phenotype() wrapped, not cached)
+     */
+    protected IntBuffer phenotypeBuffer(Program solution)
+    {
+        return IntBuffer.wrap(phenotype(solution));
+    }
+    
+    /**
+     * Writes the labels produced by a solution into the off-heap label buffer,
+     * which is reused by the following calls.
+     * 
+     * @param solution solution to read
+     * @return the buffer, with position zero and limit the number of labels
+     */
+    protected IntBuffer collectOffHeap(Program solution)
+    {
+        if (offHeapLabels == null)
+            offHeapLabels = new OffHeapIntBuffer(2*n);
+        
+        IntBuffer labels = offHeapLabels.get(solution.getRoot().leafCount());
+        solution.getRoot().collectLabels(labels);
+        labels.flip();
+        return labels;
+    }
+    
+    /**
+     * Normalized solution as a primitive array of labels, computed once per
+     * version of the program and cached on it (see setPhenotypeCaching()). The
+     * returned array is shared and must not be modified.
+     * 
+     * @param solution solution to normalize
+     * @return labels of the normalized solution
+     */
+    public int[] cachedPhenotype(Program solution)
+    {
+        int[] phenotype = phenotypeCaching ? solution.getPhenotype() : null;
+        if (phenotype == null)
+        {
+            if (profile == null)
+                phenotype = phenotype(solution);
+            else
+            {
+                long started = System.nanoTime();
+                phenotype = phenotype(solution);
+                profile.recordNormalization(solution, System.nanoTime() - started);
+            }
+            if (phenotypeCaching)
+                solution.setPhenotype(phenotype);
+        }
+        return phenotype;
+    }
+    
+    /**
+     * 64-bit hash of the normalized solution, computed once per version of the
+     * program and cached on it. Outside of the large scale mode the cached 
+     * phenotype is hashed, otherwise the one from phenotypeBuffer(), which is 
+     * never cached.
+     * 
+     * @param solution solution to normalize
+     * @return hash of the normalized solution
+     */
+    public long phenotypeHash(Program solution)
+    {
+        if (!solution.hasPhenotypeHash())
+        {
+            if (!largeScale)
+                solution.setPhenotypeHash(hash(IntBuffer.wrap(cachedPhenotype(solution))));
+            else if (profile == null)
+                solution.setPhenotypeHash(hash(phenotypeBuffer(solution)));
+            else
+            {
+                long started = System.nanoTime();
+                solution.setPhenotypeHash(hash(phenotypeBuffer(solution)));
+                profile.recordNormalization(solution, System.nanoTime() - started);
+            }
+        }
+        return solution.getPhenotypeHash();
+    }
+    
+    /**
+     * 64-bit hash of a phenotype. Each label is mixed into the whole hash, so
+     * that, unlike polynomial hashes, short phenotypes of small labels don't 
+     * collide (large scale mode relies on the hashes alone).
+     * 
+     * @param phenotype normalized phenotype, from position zero to the limit
+     * @return the hash of the phenotype
+     */
+    public static long hash(IntBuffer phenotype)
+    {
+        long hash = 1125899906842597L + phenotype.limit();
+        for (int i = 0; i < phenotype.limit(); i++)
+        {
+            hash ^= phenotype.get(i) * 0x9e3779b97f4a7c15L;
+            hash = Long.rotateLeft(hash, 31) * 0xbf58476d1ce4e5b9L;
+        }
+        
+        // Final mixing (from MurmurHash3)
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
 
 
     /**
@@ -75,6 +362,44 @@ public abstract class FitnessFunction {
     public abstract boolean isOptimal(Program solution, int complexity);
     
 
+    /**
+     * Computes the best fitness achievable by programs of a given complexity,
+     * only for fitness functions whose optimal values are integral, whatever
+     * the type of their values (e.g. INV has DOUBLE values, but its optima 
+     * are whole numbers of inversions).
+     * 
+     * @param complexity complexity of the programs
+     * @return the optimal fitness value
+     */
+    protected long optimalFitness(int complexity)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't have integral optimal fitness values");
+    }
+    
+    /**
+     * Precomputes the optimal fitness values for complexities up to 2n-1, 
+     * must be called once n is set.
+     */
+    protected void tabulateOptimum()
+    {
+        optimumByComplexity = new long[2*n];
+        for (int complexity = 0; complexity < optimumByComplexity.length; complexity++)
+            optimumByComplexity[complexity] = optimalFitness(complexity);
+    }
+    
+    /**
+     * Looks up the best fitness achievable by programs of a given complexity.
+     * 
+     * @param complexity complexity of the programs
+     * @return the optimal fitness value
+     */
+    protected long optimum(int complexity)
+    {
+        if (complexity < optimumByComplexity.length)
+            return optimumByComplexity[complexity];
+        return optimalFitness(complexity);
+    }
+
     /**
      * Tells if this program is optimal with respect to the problem.
      * 
@@ -87,6 +412,57 @@ public abstract class FitnessFunction {
         return isOptimal(solution, (2*n)-1);
     }
     
+    /**
+     * Enables or disables the caching of phenotypes on the programs. Without
+     * it, the phenotype is computed at each call of cachedPhenotype() and the
+     * programs are never written to, e.g. for a function evaluating programs
+     * whose cache belongs to another function, on several threads at once.
+     * 
+     * @param phenotypeCaching false to neither read nor write the cache
+     */
+    public void setPhenotypeCaching(boolean phenotypeCaching)
+    {
+        this.phenotypeCaching = phenotypeCaching;
+    }
+    
+    /**
+     * Enables or disables the large scale mode, where supporting fitness 
+     * functions evaluate solutions in off-heap buffers and skip incremental 
+     * evaluation, to avoid garbage collection pressure with very large n.
+     * 
+     * @param largeScale true to enable the large scale mode
+     */
+    public void setLargeScale(boolean largeScale)
+    {
+        this.largeScale = largeScale;
+    }
+    
+    /**
+     * @return true if the large scale mode is enabled
+     */
+    public boolean isLargeScale()
+    {
+        return largeScale;
+    }
+    
+    /**
+     * Sets the timing profile of the evaluations.
+     * 
+     * @param profile profile to record into, null to disable profiling
+     */
+    public void setProfile(FitnessProfile profile)
+    {
+        this.profile = profile;
+    }
+    
+    /**
+     * @return the timing profile of the evaluations, null if disabled
+     */
+    public FitnessProfile getProfile()
+    {
+        return profile;
+    }
+    
     /**
      * Fitness function type.
      */
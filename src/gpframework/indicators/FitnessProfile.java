@@ -0,0 +1,259 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import gpframework.program.Program;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Timing profile of a fitness function, shared with its copies. Records the
+ * latencies of full evaluations and of normalizations (see
+ * FitnessFunction.cachedPhenotype()) in histograms by number of labels of the
+ * program (rounded down to a power of two), and fits a linear cost model of
+ * the evaluations, i.e. fixed nanoseconds plus nanoseconds per leaf, to
+ * predict the evaluation time for other problem sizes. The sums of the fit 
+ * are checked for overflow: if one would overflow, the fit is abandoned and 
+ * reported as NaN.
+ */
+public class FitnessProfile
+{
+    /**
+     * Number of length classes (0, 1, 2-3, 4-7, ...).
+     */
+    private static final int CLASSES = 33;
+
+    /**
+     * Latencies of full evaluations, by length class (created on demand).
+     */
+    private AtomicReferenceArray<LatencyHistogram> evaluations = new AtomicReferenceArray<LatencyHistogram>(CLASSES);
+
+    /**
+     * Latencies of normalizations, by length class (created on demand).
+     */
+    private AtomicReferenceArray<LatencyHistogram> normalizations = new AtomicReferenceArray<LatencyHistogram>(CLASSES);
+
+    /**
+     * Sums of the least squares fit of the evaluation latencies.
+     */
+    private AtomicLong samples = new AtomicLong(), sumLeaves = new AtomicLong(), sumNanos = new AtomicLong(),
+            sumSquaredLeaves = new AtomicLong(), sumProducts = new AtomicLong();
+
+    /**
+     * Set when a sum of the fit would overflow, the sums are not updated anymore.
+     */
+    private volatile boolean fitOverflowed = false;
+
+    /**
+     * Records the latency of a full evaluation.
+     *
+     * @param solution evaluated program
+     * @param nanos latency in nanoseconds
+     */
+    public void recordEvaluation(Program solution, long nanos)
+    {
+        long leaves = solution.getRoot().leafCount();
+        histogram(evaluations, (int) leaves).record(nanos);
+
+        samples.incrementAndGet();
+        if (fitOverflowed)
+            return;
+
+        try {
+            addExact(sumLeaves, leaves);
+            addExact(sumNanos, nanos);
+            addExact(sumSquaredLeaves, multiplyExact(leaves, leaves));
+            addExact(sumProducts, multiplyExact(leaves, nanos));
+        } catch (ArithmeticException ex) {
+            fitOverflowed = true;
+        }
+    }
+
+    /**
+     * Adds a value to a sum, unless the sum would overflow (as Math.addExact,
+     * which is not available at this source level).
+     *
+     * @param sum sum to update
+     * @param value value to add
+     * @throws ArithmeticException if the sum would overflow, which is then unchanged
+     */
+    private static void addExact(AtomicLong sum, long value)
+    {
+        while (true)
+        {
+            long current = sum.get(), updated = current + value;
+            if (((current ^ updated) & (value ^ updated)) < 0)
+                throw new ArithmeticException("long overflow");
+            if (sum.compareAndSet(current, updated))
+                return;
+        }
+    }
+
+    /**
+     * Multiplies two values, unless the product would overflow (as 
+     * Math.multiplyExact, which is not available at this source level).
+     *
+     * @param a first factor
+     * @param b second factor
+     * @return the product
+     * @throws ArithmeticException if the product would overflow
+     */
+    private static long multiplyExact(long a, long b)
+    {
+        long product = a * b;
+        if ((Math.abs(a) | Math.abs(b)) >>> 31 != 0
+                && ((b != 0 && product / b != a) || (a == Long.MIN_VALUE && b == -1)))
+            throw new ArithmeticException("long overflow");
+        return product;
+    }
+
+    /**
+     * Records the latency of a normalization.
+     *
+     * @param solution normalized program
+     * @param nanos latency in nanoseconds
+     */
+    public void recordNormalization(Program solution, long nanos)
+    {
+        histogram(normalizations, solution.getRoot().leafCount()).record(nanos);
+    }
+
+    /**
+     * Finds the histogram of a length class, creating it if needed.
+     *
+     * @param histograms histograms by length class
+     * @param length number of labels of a program
+     * @return the histogram of the length class
+     */
+    private static LatencyHistogram histogram(AtomicReferenceArray<LatencyHistogram> histograms, int length)
+    {
+        int lengthClass = 32 - Integer.numberOfLeadingZeros(length);
+
+        LatencyHistogram histogram = histograms.get(lengthClass);
+        if (histogram == null)
+        {
+            histograms.compareAndSet(lengthClass, null, new LatencyHistogram());
+            histogram = histograms.get(lengthClass);
+        }
+        return histogram;
+    }
+
+    /**
+     * Slope of the least squares fit of the evaluation latencies.
+     *
+     * @return nanoseconds per leaf, 0 if the lengths don't vary, NaN if the
+     *         sums of the fit overflowed
+     */
+    public double getNanosPerLeaf()
+    {
+        if (fitOverflowed)
+            return Double.NaN;
+
+        double n = samples.get();
+        double variance = n * sumSquaredLeaves.get() - (double) sumLeaves.get() * sumLeaves.get();
+        if (n == 0 || variance == 0)
+            return 0;
+
+        return (n * sumProducts.get() - (double) sumLeaves.get() * sumNanos.get()) / variance;
+    }
+
+    /**
+     * Intercept of the least squares fit of the evaluation latencies.
+     *
+     * @return fixed nanoseconds per evaluation, NaN if the sums of the fit 
+     *         overflowed
+     */
+    public double getFixedNanos()
+    {
+        if (fitOverflowed)
+            return Double.NaN;
+
+        double n = samples.get();
+        if (n == 0)
+            return 0;
+
+        return (sumNanos.get() - getNanosPerLeaf() * sumLeaves.get()) / n;
+    }
+
+    /**
+     * Predicts the latency of an evaluation with the fitted cost model.
+     *
+     * @param leaves number of labels of the program
+     * @return the predicted latency in nanoseconds
+     */
+    public double predictNanos(int leaves)
+    {
+        return getFixedNanos() + getNanosPerLeaf() * leaves;
+    }
+
+    /**
+     * @return the number of recorded full evaluations
+     */
+    public long getEvaluations()
+    {
+        return samples.get();
+    }
+
+    /**
+     * Fits the cost model and writes it, together with summaries of the
+     * latency histograms, into a statistics map.
+     *
+     * @param statistics map to fill
+     */
+    public void report(Map<String, Object> statistics)
+    {
+        statistics.put("profiledEvaluations", getEvaluations());
+        statistics.put("evaluationNanosPerLeaf", getNanosPerLeaf());
+        statistics.put("evaluationFixedNanos", getFixedNanos());
+        statistics.put("evaluationLatency", summary(evaluations));
+        statistics.put("normalizationLatency", summary(normalizations));
+    }
+
+    /**
+     * Summarizes histograms by length class.
+     *
+     * @param histograms histograms by length class
+     * @return summaries of the histograms, by increasing range of lengths
+     */
+    private static Map<String, String> summary(AtomicReferenceArray<LatencyHistogram> histograms)
+    {
+        Map<String, String> summary = new LinkedHashMap<String, String>();
+
+        for (int c = 0; c < CLASSES; c++)
+        {
+            LatencyHistogram histogram = histograms.get(c);
+            if (histogram == null)
+                continue;
+
+            long lowest = c == 0 ? 0 : 1L << (c - 1), highest = c == 0 ? 0 : (1L << c) - 1;
+            summary.put(lowest + "-" + highest, histogram.toString());
+        }
+
+        return summary;
+    }
+}
@@ -0,0 +1,414 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import gpframework.indicators.FitnessFunction.FunctionType;
+import gpframework.indicators.FitnessFunction.ValueType;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exact fitness landscape of a fitness function over all its phenotypes, i.e.
+ * all the sequences of distinct variables (each one possibly negated, if the
+ * phenotypes of the function can contain negative literals). Phenotypes are
+ * ranked by length and then lexicographically, so that the fitness of any 
+ * phenotype can be looked up in an array. Ranks are ints, which limits the
+ * landscapes to n = 12 variables, n = 9 if negative literals are kept (e.g.
+ * signed ORDER at n = 10 has over six billion phenotypes). Landscapes of 
+ * weighted functions record the fingerprint of their weights.
+ */
+public class Landscape 
+{
+    /**
+     * Magic number of landscape files ("GPLS").
+     */
+    private static final int MAGIC = 0x47504C53;
+    
+    /**
+     * Version of the file format.
+     */
+    private static final int VERSION = 2;
+    
+    /**
+     * Name of the class of the fitness function.
+     */
+    private String functionName;
+    
+    /**
+     * Type of the fitness function (minimization or maximization).
+     */
+    private FunctionType functionType;
+    
+    /**
+     * Type of the fitness values.
+     */
+    private ValueType valueType;
+    
+    /**
+     * Number of variables.
+     */
+    private int n;
+    
+    /**
+     * Label of the first variable (e.g. 0 for sorting, 1 for order and majority).
+     */
+    private int firstVariable;
+    
+    /**
+     * Whether variables can appear as negative literals.
+     */
+    private boolean signed;
+    
+    /**
+     * Fingerprint of the weights of the variables (see WeightTable.fingerprint()),
+     * 0 if the function is not weighted.
+     */
+    private long weightsFingerprint;
+    
+    /**
+     * Rank of the first phenotype of each length (from 0 to n+1).
+     */
+    private int[] offsets;
+    
+    /**
+     * Fitness values indexed by rank (doubles are stored as raw bits).
+     */
+    private long[] values;
+    
+    /**
+     * Constructor, allocates an empty landscape.
+     * 
+     * @param functionName name of the class of the fitness function
+     * @param functionType type of the fitness function
+     * @param valueType type of the fitness values, INTEGER, LONG or DOUBLE
+     * @param n number of variables
+     * @param firstVariable label of the first variable
+     * @param signed whether variables can appear as negative literals
+     * @param weightsFingerprint fingerprint of the weights of the variables, 0 if not weighted
+     */
+    public Landscape(String functionName, FunctionType functionType, ValueType valueType, int n, int firstVariable, boolean signed, long weightsFingerprint)
+    {
+        if (valueType == ValueType.OBJECT)
+            throw new IllegalArgumentException("Landscapes only support primitive fitness values, " + functionName + " has none");
+        
+        this.functionName = functionName;
+        this.functionType = functionType;
+        this.valueType = valueType;
+        this.n = n;
+        this.firstVariable = firstVariable;
+        this.signed = signed;
+        this.weightsFingerprint = weightsFingerprint;
+        
+        // Count phenotypes of each length
+        offsets = new int[n+2];
+        long count = 1, total = 0;
+        for (int length = 0; length <= n; length++)
+        {
+            offsets[length] = (int) total;
+            total += count;
+            count *= (n - length) * (signed ? 2 : 1);
+            
+            if (total > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many phenotypes with n = " + n + (signed ? " (signed)" : "") 
+                        + ", landscapes support up to " + (signed ? 9 : 12) + " variables" + (signed ? " with negative literals" : ""));
+        }
+        offsets[n+1] = (int) total;
+        
+        values = new long[(int) total];
+    }
+    
+    /**
+     * Computes the rank of a phenotype.
+     * 
+     * @param phenotype sequence of distinct variables
+     * @return the index of the phenotype in the landscape
+     */
+    public int rank(int[] phenotype)
+    {
+        if (phenotype.length > n)
+            throw new IllegalArgumentException("Phenotype longer than " + n + " variables");
+        
+        int radix = signed ? 2 : 1;
+        long used = 0, rank = 0;
+        
+        for (int i = 0; i < phenotype.length; i++)
+        {
+            int variable = Math.abs(phenotype[i]) - firstVariable;
+            if (variable < 0 || variable >= n || (used & (1L << variable)) != 0 || (!signed && phenotype[i] < 0))
+                throw new IllegalArgumentException("Invalid label " + phenotype[i] + " at position " + i);
+            
+            // Index among the unused variables, then sign
+            int digit = variable - Long.bitCount(used & ((1L << variable) - 1));
+            used |= 1L << variable;
+            
+            rank = rank * (n - i) * radix + digit * radix + (phenotype[i] < 0 ? 1 : 0);
+        }
+        
+        return offsets[phenotype.length] + (int) rank;
+    }
+    
+    /**
+     * Gets the fitness of a phenotype as a primitive long (INTEGER or LONG).
+     * 
+     * @param rank rank of the phenotype
+     * @return the fitness of the phenotype
+     */
+    public long getLong(int rank)
+    {
+        return values[rank];
+    }
+    
+    /**
+     * Gets the fitness of a phenotype as a primitive double (DOUBLE).
+     * 
+     * @param rank rank of the phenotype
+     * @return the fitness of the phenotype
+     */
+    public double getDouble(int rank)
+    {
+        return Double.longBitsToDouble(values[rank]);
+    }
+    
+    /**
+     * Gets the fitness of a phenotype.
+     * 
+     * @param rank rank of the phenotype
+     * @return the fitness, boxed according to the value type
+     */
+    public Comparable get(int rank)
+    {
+        switch (valueType)
+        {
+            case INTEGER:
+                return (int) values[rank];
+            case LONG:
+                return values[rank];
+            default:
+                return getDouble(rank);
+        }
+    }
+    
+    /**
+     * Sets the fitness of a phenotype.
+     * 
+     * @param rank rank of the phenotype
+     * @param value fitness value (raw bits of doubles)
+     */
+    void set(int rank, long value)
+    {
+        values[rank] = value;
+    }
+    
+    /**
+     * Counts the phenotypes with each fitness value.
+     * 
+     * @return the size of the plateau of each fitness value
+     */
+    public Map<Comparable, Integer> getPlateauSizes()
+    {
+        Map<Comparable, Integer> plateaus = new TreeMap<Comparable, Integer>();
+        
+        for (int rank = 0; rank < values.length; rank++)
+        {
+            Comparable fitness = get(rank);
+            Integer size = plateaus.get(fitness);
+            plateaus.put(fitness, size == null ? 1 : size + 1);
+        }
+        
+        return plateaus;
+    }
+    
+    /**
+     * Computes the best fitness among the phenotypes of each length. Programs
+     * producing phenotypes of length l have complexity at least 2l-1.
+     * 
+     * @return the optimal fitness of each phenotype length (from 0 to n)
+     */
+    public Comparable[] getOptimumByLength()
+    {
+        Comparable[] optimum = new Comparable[n+1];
+        
+        for (int length = 0; length <= n; length++)
+        {
+            for (int rank = offsets[length]; rank < offsets[length+1]; rank++)
+            {
+                Comparable fitness = get(rank);
+                if (optimum[length] == null 
+                        || (functionType == FunctionType.MAXIMIZATION && fitness.compareTo(optimum[length]) > 0)
+                        || (functionType == FunctionType.MINIMIZATION && fitness.compareTo(optimum[length]) < 0))
+                    optimum[length] = fitness;
+            }
+        }
+        
+        return optimum;
+    }
+    
+    /**
+     * Writes the landscape in binary format. Values are stored on four bytes
+     * when they all fit into an int.
+     * 
+     * @param out stream to write to
+     * @throws IOException if the stream can't be written
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+        
+        boolean compact = valueType != ValueType.DOUBLE;
+        for (int rank = 0; compact && rank < values.length; rank++)
+            compact = values[rank] == (int) values[rank];
+        
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeUTF(functionName);
+        data.writeUTF(functionType.name());
+        data.writeUTF(valueType.name());
+        data.writeInt(n);
+        data.writeInt(firstVariable);
+        data.writeBoolean(signed);
+        data.writeLong(weightsFingerprint);
+        data.writeByte(compact ? 4 : 8);
+        data.writeInt(values.length);
+        
+        for (long value : values)
+        {
+            if (compact)
+                data.writeInt((int) value);
+            else
+                data.writeLong(value);
+        }
+        
+        data.flush();
+    }
+    
+    /**
+     * Reads a landscape written by write().
+     * 
+     * @param in stream to read from
+     * @return the landscape
+     * @throws IOException if the stream can't be read or is not a landscape
+     */
+    public static Landscape read(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a landscape file");
+        if (data.readInt() != VERSION)
+            throw new IOException("Unsupported landscape file version");
+        
+        String functionName = data.readUTF();
+        FunctionType functionType = FunctionType.valueOf(data.readUTF());
+        ValueType valueType = ValueType.valueOf(data.readUTF());
+        int n = data.readInt();
+        int firstVariable = data.readInt();
+        boolean signed = data.readBoolean();
+        long weightsFingerprint = data.readLong();
+        int width = data.readByte();
+        
+        Landscape landscape = new Landscape(functionName, functionType, valueType, n, firstVariable, signed, weightsFingerprint);
+        if (data.readInt() != landscape.values.length)
+            throw new IOException("Corrupted landscape file");
+        
+        for (int rank = 0; rank < landscape.values.length; rank++)
+            landscape.values[rank] = width == 4 ? data.readInt() : data.readLong();
+        
+        return landscape;
+    }
+    
+    /**
+     * @return the name of the class of the fitness function
+     */
+    public String getFunctionName()
+    {
+        return functionName;
+    }
+    
+    /**
+     * @return the type of the fitness values
+     */
+    public ValueType getValueType()
+    {
+        return valueType;
+    }
+    
+    /**
+     * @return the number of variables
+     */
+    public int getN()
+    {
+        return n;
+    }
+    
+    /**
+     * @return the label of the first variable
+     */
+    public int getFirstVariable()
+    {
+        return firstVariable;
+    }
+    
+    /**
+     * @return the fingerprint of the weights of the variables, 0 if not weighted
+     */
+    public long getWeightsFingerprint()
+    {
+        return weightsFingerprint;
+    }
+    
+    /**
+     * @return whether variables can appear as negative literals
+     */
+    public boolean isSigned()
+    {
+        return signed;
+    }
+    
+    /**
+     * Gets the rank of the first phenotype of a given length.
+     * 
+     * @param length length of the phenotypes, from 0 to n+1
+     * @return the rank of the first phenotype of that length (the number of
+     *         phenotypes if length is n+1)
+     */
+    public int getOffset(int length)
+    {
+        return offsets[length];
+    }
+    
+    /**
+     * @return the number of phenotypes
+     */
+    public int size()
+    {
+        return values.length;
+    }
+}
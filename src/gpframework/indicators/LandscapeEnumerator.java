@@ -0,0 +1,318 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import gpframework.common.Utils;
+import gpframework.common.WorkerThreadFactory;
+import gpframework.common.exceptions.ArityException;
+import gpframework.indicators.FitnessFunction.ValueType;
+import gpframework.problems.Problem;
+import gpframework.program.Function;
+import gpframework.program.Program;
+import gpframework.program.Term;
+import gpframework.program.Terminal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the exact fitness landscape of a problem by evaluating a program
+ * for each phenotype, i.e. each sequence of distinct variables, negated when
+ * the fitness function keeps negative literals in its phenotypes. Phenotypes
+ * are split in blocks of consecutive ranks (by length and first variable)
+ * which are evaluated in parallel, each by its own copy of the fitness 
+ * function. Only viable for small problems (e.g. n = 10 already produces
+ * about ten million phenotypes, n = 8 if negative literals are kept).
+ */
+public class LandscapeEnumerator 
+{
+    /**
+     * Problem whose landscape is computed.
+     */
+    private Problem problem;
+    
+    /**
+     * Number of worker threads.
+     */
+    private int threads;
+    
+    /**
+     * Terminal producing each label.
+     */
+    private Map<Integer, Terminal> terminals;
+    
+    /**
+     * Landscape being filled.
+     */
+    private Landscape landscape;
+    
+    /**
+     * Constructor.
+     * 
+     * @param problem problem whose landscape is computed
+     * @param threads number of worker threads
+     */
+    public LandscapeEnumerator(Problem problem, int threads)
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed to enumerate the landscape");
+        
+        this.problem = problem;
+        this.threads = threads;
+    }
+    
+    /**
+     * Evaluates all the phenotypes of the problem.
+     * 
+     * @return the fitness landscape of the problem
+     */
+    public Landscape enumerate()
+    {
+        FitnessFunction function = problem.getFitnessFunction();
+        
+        // Collect the alphabet of the problem
+        terminals = new HashMap<Integer, Terminal>();
+        int firstVariable = Integer.MAX_VALUE, variables = 0;
+        boolean negated = false;
+        for (Terminal terminal : problem.getProgramFactory().getTerminalFactory().generateAll())
+        {
+            int label = label(terminal);
+            terminals.put(label, terminal);
+            firstVariable = Math.min(firstVariable, Math.abs(label));
+            negated |= label < 0;
+        }
+        for (int label : terminals.keySet())
+            variables = Math.max(variables, Math.abs(label) - firstVariable + 1);
+        
+        // Negative literals matter only if the phenotype keeps them
+        boolean signed = negated && function.phenotype(build(new int[] { -firstVariable })).length > 0;
+        
+        // Landscapes of weighted functions are only valid for the same weights
+        long weightsFingerprint = 0;
+        if (function instanceof WeightedFitnessFunction && ((WeightedFitnessFunction) function).getWeightTable() != null)
+            weightsFingerprint = ((WeightedFitnessFunction) function).getWeightTable().fingerprint();
+        
+        landscape = new Landscape(function.getClass().getName(), function.getType(), function.getValueType(), variables, firstVariable, signed, weightsFingerprint);
+        
+        // One block for each length and first digit
+        List<Block> blocks = new ArrayList<Block>();
+        blocks.add(new Block(0, -1));
+        int radix = signed ? 2 : 1;
+        for (int length = 1; length <= variables; length++)
+            for (int digit = 0; digit < variables * radix; digit++)
+                blocks.add(new Block(length, digit));
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory("landscape"));
+        try
+        {
+            List<Future<Object>> results = new ArrayList<Future<Object>>(blocks.size());
+            for (Block block : blocks)
+                results.add(executor.submit(block));
+            for (Future<Object> result : results)
+                Utils.await(result);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        
+        return landscape;
+    }
+    
+    /**
+     * Retrieves the label produced by a terminal.
+     * 
+     * @param terminal terminal to inspect
+     * @return the label of the terminal
+     */
+    private static int label(Terminal terminal)
+    {
+        int[] label = new int[1];
+        terminal.collectLabels(label, 0);
+        return label[0];
+    }
+    
+    /**
+     * Builds a program producing a given sequence of labels, as a balanced 
+     * tree of binary functions.
+     * 
+     * @param labels labels to produce
+     * @return a program producing the labels
+     */
+    private Program build(int[] labels)
+    {
+        if (labels.length == 0)
+            return new Program(problem.getNull());
+        
+        return new Program(build(labels, 0, labels.length));
+    }
+    
+    /**
+     * Builds the subtree producing a range of labels.
+     * 
+     * @param labels labels to produce
+     * @param from first label of the range
+     * @param to end of the range (exclusive)
+     * @return the root of the subtree
+     */
+    private Term build(int[] labels, int from, int to)
+    {
+        if (to - from == 1)
+            return (Term) terminals.get(labels[from]).clone();
+        
+        int middle = (from + to) / 2;
+        try
+        {
+            Function function = problem.getFunctionByArity(2);
+            function.setDescendant(0, build(labels, from, middle));
+            function.setDescendant(1, build(labels, middle, to));
+            return function;
+        }
+        catch (ArityException e)
+        {
+            throw new IllegalStateException("Landscapes need binary functions", e);
+        }
+    }
+    
+    /**
+     * Phenotypes of a given length starting with a given digit, i.e. a block
+     * of consecutive ranks, enumerated in rank order.
+     */
+    private class Block implements Callable<Object>
+    {
+        /**
+         * Length of the phenotypes.
+         */
+        private int length;
+        
+        /**
+         * First digit (index of the first variable, times two plus its sign 
+         * if signed), -1 for the empty phenotype.
+         */
+        private int digit;
+        
+        /**
+         * Private copy of the fitness function.
+         */
+        private FitnessFunction function;
+        
+        /**
+         * Phenotype being built.
+         */
+        private int[] phenotype;
+        
+        /**
+         * Rank of the next phenotype.
+         */
+        private int rank;
+        
+        /**
+         * Constructor.
+         * 
+         * @param length length of the phenotypes
+         * @param digit first digit of the phenotypes
+         */
+        Block(int length, int digit)
+        {
+            this.length = length;
+            this.digit = digit;
+        }
+        
+        @Override
+        public Object call() throws Exception
+        {
+            function = problem.getFitnessFunction().copy();
+            
+            phenotype = new int[length];
+            rank = landscape.getOffset(length);
+            
+            if (length == 0)
+            {
+                evaluate();
+                return null;
+            }
+            
+            // Skip the blocks of the smaller first digits
+            int size = (landscape.getOffset(length+1) - rank) / (landscape.getN() * (landscape.isSigned() ? 2 : 1));
+            rank += digit * size;
+            
+            int radix = landscape.isSigned() ? 2 : 1;
+            int variable = digit / radix;
+            phenotype[0] = (digit % radix == 1 ? -1 : 1) * (landscape.getFirstVariable() + variable);
+            enumerate(1, 1L << variable);
+            return null;
+        }
+        
+        /**
+         * Completes the phenotype in all possible ways, in rank order.
+         * 
+         * @param position next position to fill
+         * @param used variables already in the phenotype
+         */
+        private void enumerate(int position, long used)
+        {
+            if (position == length)
+            {
+                evaluate();
+                return;
+            }
+            
+            for (int variable = 0; variable < landscape.getN(); variable++)
+            {
+                if ((used & (1L << variable)) != 0)
+                    continue;
+                
+                int label = landscape.getFirstVariable() + variable;
+                phenotype[position] = label;
+                enumerate(position + 1, used | (1L << variable));
+                
+                if (landscape.isSigned())
+                {
+                    phenotype[position] = -label;
+                    enumerate(position + 1, used | (1L << variable));
+                }
+            }
+        }
+        
+        /**
+         * Evaluates the current phenotype and stores its fitness.
+         */
+        private void evaluate()
+        {
+            Program program = build(phenotype);
+            
+            if (landscape.getValueType() == ValueType.DOUBLE)
+                landscape.set(rank++, Double.doubleToLongBits(function.evaluateDouble(program)));
+            else
+                landscape.set(rank++, function.evaluateLong(program));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import gpframework.program.Program;
+
+/**
+ * Fitness function looking up the fitness of the phenotype of a solution in a
+ * precomputed Landscape of another fitness function. Landscapes of the random
+ * weighted families are only valid for the same weights (i.e. the same seed),
+ * which is checked through the fingerprint of the weights.
+ */
+public class LandscapeFitnessFunction extends FitnessFunction
+{
+    /**
+     * Fitness function whose landscape is looked up.
+     */
+    protected FitnessFunction base;
+    
+    /**
+     * Landscape of the base fitness function.
+     */
+    protected Landscape landscape;
+    
+    /**
+     * Constructor.
+     * 
+     * @param base fitness function whose landscape is looked up
+     * @param landscape landscape of the base fitness function
+     */
+    public LandscapeFitnessFunction(FitnessFunction base, Landscape landscape)
+    {
+        super(base.getType());
+        
+        if (!base.getClass().getName().equals(landscape.getFunctionName()))
+            throw new IllegalArgumentException("Landscape of " + landscape.getFunctionName() + " can't be used with " + base.getClass().getName());
+        
+        long weightsFingerprint = 0;
+        if (base instanceof WeightedFitnessFunction && ((WeightedFitnessFunction) base).getWeightTable() != null)
+            weightsFingerprint = ((WeightedFitnessFunction) base).getWeightTable().fingerprint();
+        if (weightsFingerprint != landscape.getWeightsFingerprint())
+            throw new IllegalArgumentException("Landscape of " + landscape.getFunctionName() + " was computed with different weights (use the same seed)");
+        
+        this.base = base;
+        this.landscape = landscape;
+        this.n = base.getN();
+    }
+
+    @Override
+    public FitnessFunction copy()
+    {
+        // The landscape is read-only, and can be shared
+        FitnessFunction copy = new LandscapeFitnessFunction(base.copy(), landscape);
+        copy.setProfile(profile);
+        return copy;
+    }
+
+    @Override
+    public Comparable evaluate(Program solution) 
+    {
+        return landscape.get(landscape.rank(cachedPhenotype(solution)));
+    }
+
+    @Override
+    public ValueType getValueType()
+    {
+        return landscape.getValueType();
+    }
+
+    @Override
+    public long evaluateLong(Program solution)
+    {
+        return landscape.getLong(landscape.rank(cachedPhenotype(solution)));
+    }
+
+    @Override
+    public double evaluateDouble(Program solution)
+    {
+        return landscape.getDouble(landscape.rank(cachedPhenotype(solution)));
+    }
+
+    @Override
+    public Object normalize(Program solution)
+    {
+        return base.normalize(solution);
+    }
+
+    @Override
+    public int[] phenotype(Program solution)
+    {
+        return base.phenotype(solution);
+    }
+
+    @Override
+    public boolean isOptimal(Program solution, int complexity) 
+    {
+        return base.isOptimal(solution, complexity);
+    }
+
+    /**
+     * @return the landscape looked up by this fitness function
+     */
+    public Landscape getLandscape()
+    {
+        return landscape;
+    }
+}
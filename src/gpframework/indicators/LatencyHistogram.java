@@ -0,0 +1,182 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds, with log-linear buckets in the style
+ * of HdrHistogram: values below 64 have their own bucket, larger values fall
+ * in one of 32 buckets per power of two (i.e. about 3% relative precision).
+ * Recording is lock-free, so a histogram can be shared by several threads.
+ */
+public class LatencyHistogram
+{
+    /**
+     * Number of bits of precision of the buckets.
+     */
+    private static final int PRECISION = 5;
+
+    /**
+     * Number of buckets per power of two.
+     */
+    private static final int HALF = 1 << PRECISION;
+
+    /**
+     * Number of buckets for values below 2*HALF (one per value).
+     */
+    private static final int LINEAR = 2 * HALF;
+
+    /**
+     * Number of buckets covering all the non-negative long values.
+     */
+    private static final int BUCKETS = LINEAR + (63 - PRECISION - 1) * HALF;
+
+    /**
+     * Number of recorded values in each bucket.
+     */
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of recorded values.
+     */
+    private AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of the recorded values.
+     */
+    private AtomicLong sum = new AtomicLong();
+
+    /**
+     * Largest recorded value.
+     */
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency in nanoseconds (negative values are recorded as 0)
+     */
+    public void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long largest = max.get();
+        while (value > largest && !max.compareAndSet(largest, value))
+            largest = max.get();
+    }
+
+    /**
+     * Finds the bucket of a value.
+     *
+     * @param value non-negative value
+     * @return the index of the bucket
+     */
+    private static int bucket(long value)
+    {
+        if (value < LINEAR)
+            return (int) value;
+
+        // Keep the PRECISION bits following the highest one
+        int shift = 63 - Long.numberOfLeadingZeros(value) - PRECISION;
+        return LINEAR + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * Value representing a bucket (the middle of its range).
+     *
+     * @param bucket index of the bucket
+     * @return the representative value of the bucket
+     */
+    private static long value(int bucket)
+    {
+        if (bucket < LINEAR)
+            return bucket;
+
+        int shift = (bucket - LINEAR) / HALF + 1;
+        long lowest = (long) ((bucket - LINEAR) % HALF + HALF) << shift;
+        return lowest + (1L << shift) / 2;
+    }
+
+    /**
+     * Estimates a percentile of the recorded values.
+     *
+     * @param percentile percentile, from 0 to 100
+     * @return the estimated value, 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long total = count.get();
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++)
+        {
+            seen += counts.get(b);
+            if (seen >= rank)
+                return Math.min(value(b), max.get());
+        }
+
+        return max.get();
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, 0 if nothing has been recorded
+     */
+    public double getMean()
+    {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /**
+     * @return the largest recorded value
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d mean=%.0f p50=%d p99=%d max=%d", getCount(), getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,379 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.program.Program;
+import gpframework.program.ordermajority.WeightTable;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fitness function combining an expensive exact measure with a cheap proxy 
+ * (e.g. RUN for LAS), which screens offspring before they are evaluated: an
+ * offspring is only evaluated exactly if no individual of the population with
+ * smaller or equal complexity has a strictly better proxy fitness, i.e. if the
+ * proxy says it might be non-dominated. Screening is a heuristic, individuals
+ * rejected by the proxy could have been non-dominated.
+ * 
+ * Proxy and exact evaluations are counted separately. Each proxy evaluation
+ * costs proxyCost exact evaluations (def. 1), which the selection criterion 
+ * charges to the evaluations budget once they add up to whole evaluations.
+ * The proxy doesn't cache phenotypes: it never sees the phenotype cached on a
+ * program by the exact measure, nor leaves its own there, since the two may 
+ * normalize programs differently, and it never writes to the programs it
+ * screens, which other threads may be reading.
+ */
+public class MultiFidelityFitness extends FitnessFunction implements DeltaFitnessFunction, WeightedFitnessFunction
+{
+    /**
+     * Exact fitness measure.
+     */
+    protected FitnessFunction exact;
+    
+    /**
+     * Cheap proxy of the exact measure.
+     */
+    protected FitnessFunction proxy;
+    
+    /**
+     * Proxy fitness of the individuals of the population (which are never
+     * mutated in place).
+     */
+    private Map<Program, Comparable> proxyFitness = new WeakHashMap<Program, Comparable>();
+    
+    /**
+     * Statistics (shared with the copies of this function).
+     */
+    private AtomicLong proxyEvaluations = new AtomicLong(), exactEvaluations = new AtomicLong(), rejections = new AtomicLong();
+    
+    /**
+     * Evaluations charged for the proxy evaluations (shared with the copies of
+     * this function).
+     */
+    private AtomicLong proxyCharges = new AtomicLong();
+    
+    /**
+     * Cost of a proxy evaluation, as a fraction of an exact evaluation.
+     */
+    protected double proxyCost = 1;
+    
+    /**
+     * Cost of the proxy evaluations of this copy not charged yet.
+     */
+    private double proxyCostOwed = 0;
+    
+    /**
+     * Constructor.
+     * 
+     * @param exact exact fitness measure
+     * @param proxy cheap proxy of the exact measure
+     */
+    public MultiFidelityFitness(FitnessFunction exact, FitnessFunction proxy)
+    {
+        super(exact.getType());
+        this.exact = exact;
+        this.proxy = proxy;
+        this.n = exact.getN();
+        
+        // The phenotype cache of the programs belongs to the exact measure
+        proxy.setPhenotypeCaching(false);
+    }
+    
+    @Override
+    public FitnessFunction copy()
+    {
+        MultiFidelityFitness copy = new MultiFidelityFitness(exact.copy(), proxy.copy());
+        copy.proxyEvaluations = proxyEvaluations;
+        copy.exactEvaluations = exactEvaluations;
+        copy.rejections = rejections;
+        copy.proxyCharges = proxyCharges;
+        copy.proxyCost = proxyCost;
+        copy.setProfile(profile);
+        return copy;
+    }
+    
+    /**
+     * Screens an offspring with the proxy, before its exact evaluation.
+     * 
+     * @param offspring offspring to screen
+     * @param population individuals the offspring competes with
+     * @return false if an individual of the population with smaller or equal
+     *         complexity has a strictly better proxy fitness
+     */
+    public boolean mightBeNonDominated(Program offspring, List<Program> population)
+    {
+        Comparable candidate = evaluateProxy(offspring);
+        
+        for (Program individual : population)
+        {
+            if (individual.complexity() > offspring.complexity())
+                continue;
+            
+            Comparable fitness = proxyFitness.get(individual);
+            if (fitness == null)
+            {
+                fitness = evaluateProxy(individual);
+                proxyFitness.put(individual, fitness);
+            }
+            
+            int comparison = fitness.compareTo(candidate);
+            if (proxy.getType() == FunctionType.MAXIMIZATION ? comparison > 0 : comparison < 0)
+            {
+                rejections.incrementAndGet();
+                return false;
+            }
+        }
+        
+        // The offspring may join the population
+        proxyFitness.put(offspring, candidate);
+        return true;
+    }
+    
+    /**
+     * Evaluates a solution with the proxy.
+     * 
+     * @param solution solution to evaluate
+     * @return the proxy fitness of the solution
+     */
+    private Comparable evaluateProxy(Program solution)
+    {
+        proxyEvaluations.incrementAndGet();
+        proxyCostOwed += proxyCost;
+        return proxy.evaluate(solution);
+    }
+    
+    /**
+     * Takes the whole evaluations owed for the proxy evaluations of this copy,
+     * the fractional remainder is carried over to the next charge.
+     * 
+     * @return the number of evaluations to charge to the budget
+     */
+    public long takeProxyCharge()
+    {
+        long charge = (long) proxyCostOwed;
+        proxyCostOwed -= charge;
+        proxyCharges.addAndGet(charge);
+        return charge;
+    }
+
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        exactEvaluations.incrementAndGet();
+        return exact.evaluate(solution);
+    }
+
+    @Override
+    public ValueType getValueType()
+    {
+        return exact.getValueType();
+    }
+
+    @Override
+    public long evaluateLong(Program solution)
+    {
+        exactEvaluations.incrementAndGet();
+        return exact.evaluateLong(solution);
+    }
+
+    @Override
+    public double evaluateDouble(Program solution)
+    {
+        exactEvaluations.incrementAndGet();
+        return exact.evaluateDouble(solution);
+    }
+
+    @Override
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        exactEvaluations.incrementAndGet();
+        return exact.compareTo(solution, threshold);
+    }
+
+    @Override
+    public Comparable evaluateDelta(Program solution, Comparable parentFitness, MutationEvent event)
+    {
+        if (!(exact instanceof DeltaFitnessFunction))
+            return null;
+        
+        Comparable fitness = ((DeltaFitnessFunction) exact).evaluateDelta(solution, parentFitness, event);
+        if (fitness != null)
+            exactEvaluations.incrementAndGet();
+        return fitness;
+    }
+
+    @Override
+    public long evaluateDeltaLong(Program solution, long parentFitness, MutationEvent event)
+    {
+        if (!(exact instanceof DeltaFitnessFunction))
+            return NO_DELTA;
+        
+        long fitness = ((DeltaFitnessFunction) exact).evaluateDeltaLong(solution, parentFitness, event);
+        if (fitness != NO_DELTA)
+            exactEvaluations.incrementAndGet();
+        return fitness;
+    }
+
+    @Override
+    public double evaluateDeltaDouble(Program solution, double parentFitness, MutationEvent event)
+    {
+        if (!(exact instanceof DeltaFitnessFunction))
+            return Double.NaN;
+        
+        double fitness = ((DeltaFitnessFunction) exact).evaluateDeltaDouble(solution, parentFitness, event);
+        if (!Double.isNaN(fitness))
+            exactEvaluations.incrementAndGet();
+        return fitness;
+    }
+
+    @Override
+    public Object normalize(Program solution)
+    {
+        return exact.normalize(solution);
+    }
+
+    @Override
+    public int[] phenotype(Program solution)
+    {
+        return exact.phenotype(solution);
+    }
+
+    @Override
+    protected IntBuffer phenotypeBuffer(Program solution)
+    {
+        return exact.phenotypeBuffer(solution);
+    }
+
+    @Override
+    public boolean isOptimal(Program solution, int complexity)
+    {
+        return exact.isOptimal(solution, complexity);
+    }
+
+    @Override
+    public void setLargeScale(boolean largeScale)
+    {
+        super.setLargeScale(largeScale);
+        exact.setLargeScale(largeScale);
+        proxy.setLargeScale(largeScale);
+    }
+
+    @Override
+    public void setProfile(FitnessProfile profile)
+    {
+        // Normalizations happen in the exact measure
+        super.setProfile(profile);
+        exact.setProfile(profile);
+    }
+
+    @Override
+    public void setWeightTable(WeightTable weights)
+    {
+        if (exact instanceof WeightedFitnessFunction)
+            ((WeightedFitnessFunction) exact).setWeightTable(weights);
+        if (proxy instanceof WeightedFitnessFunction)
+            ((WeightedFitnessFunction) proxy).setWeightTable(weights);
+    }
+
+    @Override
+    public WeightTable getWeightTable()
+    {
+        if (exact instanceof WeightedFitnessFunction)
+            return ((WeightedFitnessFunction) exact).getWeightTable();
+        if (proxy instanceof WeightedFitnessFunction)
+            return ((WeightedFitnessFunction) proxy).getWeightTable();
+        return null;
+    }
+    
+    /**
+     * @return the exact fitness measure
+     */
+    public FitnessFunction getExact()
+    {
+        return exact;
+    }
+    
+    /**
+     * @return the proxy of the exact measure
+     */
+    public FitnessFunction getProxy()
+    {
+        return proxy;
+    }
+    
+    /**
+     * @return the number of evaluations of the proxy
+     */
+    public long getProxyEvaluations()
+    {
+        return proxyEvaluations.get();
+    }
+    
+    /**
+     * @return the number of evaluations charged for the proxy evaluations
+     */
+    public long getProxyCharges()
+    {
+        return proxyCharges.get();
+    }
+    
+    /**
+     * @return the cost of a proxy evaluation, as a fraction of an exact one
+     */
+    public double getProxyCost()
+    {
+        return proxyCost;
+    }
+    
+    /**
+     * @param proxyCost the cost of a proxy evaluation, as a fraction of an 
+     *        exact one (0 not to charge proxy evaluations)
+     */
+    public void setProxyCost(double proxyCost)
+    {
+        this.proxyCost = proxyCost;
+    }
+    
+    /**
+     * @return the number of calls (full, incremental or early exit) of the exact measure
+     */
+    public long getExactEvaluations()
+    {
+        return exactEvaluations.get();
+    }
+    
+    /**
+     * @return the number of offspring rejected by the proxy
+     */
+    public long getRejections()
+    {
+        return rejections.get();
+    }
+}
@@ -0,0 +1,94 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Reusable buffer of ints allocated outside of the Java heap, so that the 
+ * phenotypes and scratch arrays of very large problems don't put pressure on
+ * the garbage collector. The buffer only grows (doubling its capacity), and 
+ * is meant to be owned by a single fitness function.
+ */
+public class OffHeapIntBuffer 
+{
+    /**
+     * Current off-heap storage.
+     */
+    private IntBuffer buffer;
+    
+    /**
+     * Constructor.
+     * 
+     * @param capacity initial number of ints
+     */
+    public OffHeapIntBuffer(int capacity)
+    {
+        buffer = allocate(Math.max(capacity, 1));
+    }
+    
+    /**
+     * Retrieves the buffer, large enough for a given number of ints, with
+     * position zero and limit set to that number. Contents are kept until the
+     * buffer has to grow, newly allocated storage is filled with zeros.
+     * 
+     * @param size number of ints needed
+     * @return the buffer
+     */
+    public IntBuffer get(int size)
+    {
+        if (size > buffer.capacity())
+            buffer = allocate(Math.max(size, (int) Math.min(Integer.MAX_VALUE / 4, 2L * buffer.capacity())));
+        
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+    
+    /**
+     * @return the number of ints which can be stored without growing
+     */
+    public int capacity()
+    {
+        return buffer.capacity();
+    }
+    
+    /**
+     * Allocates direct storage in native byte order.
+     * 
+     * @param capacity number of ints
+     * @return a direct buffer of ints
+     */
+    private static IntBuffer allocate(int capacity)
+    {
+        if (capacity > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException("Off-heap buffers are limited to " + Integer.MAX_VALUE / 4 + " ints");
+        
+        return ByteBuffer.allocateDirect(4 * capacity).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+}
@@ -0,0 +1,158 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators;
+
+import gpframework.indicators.order.SignedLabelTable;
+import gpframework.program.Program;
+import java.util.List;
+
+/**
+ * Labels produced by a batch of programs, flattened into a single contiguous
+ * array where each program owns a lane (a range of consecutive entries). Lanes
+ * are normalized in place, so that fitness kernels can run over primitive 
+ * arrays instead of lists of boxed elements.
+ */
+public class PhenotypeBatch 
+{
+    /**
+     * Labels of all the programs, lane after lane.
+     */
+    private int[] labels;
+    
+    /**
+     * Index of the first label of each lane.
+     */
+    private int[] offsets;
+    
+    /**
+     * Number of labels in each lane (can shrink during normalization).
+     */
+    private int[] lengths;
+    
+    /**
+     * Constructor, collects the labels produced by the programs.
+     * 
+     * @param solutions programs to flatten
+     */
+    public PhenotypeBatch(List<Program> solutions)
+    {
+        offsets = new int[solutions.size()];
+        lengths = new int[solutions.size()];
+        
+        int total = 0;
+        for (int lane = 0; lane < offsets.length; lane++)
+        {
+            offsets[lane] = total;
+            lengths[lane] = solutions.get(lane).getRoot().leafCount();
+            total += lengths[lane];
+        }
+        
+        labels = new int[total];
+        for (int lane = 0; lane < offsets.length; lane++)
+            solutions.get(lane).getRoot().collectLabels(labels, offsets[lane]);
+    }
+    
+    /**
+     * Removes from each lane the labels whose variable (absolute value) has 
+     * already occurred in the lane, keeping the order of first occurrences.
+     * 
+     * @param seen table to track the variables in a lane
+     */
+    public void keepFirstOccurrences(SignedLabelTable seen)
+    {
+        for (int lane = 0; lane < offsets.length; lane++)
+        {
+            seen.reset();
+            
+            int from = offsets[lane], to = from + lengths[lane], size = from;
+            for (int i = from; i < to; i++)
+            {
+                if (!seen.isSeen(labels[i]))
+                {
+                    seen.mark(labels[i]);
+                    labels[size++] = labels[i];
+                }
+            }
+            
+            lengths[lane] = size - from;
+        }
+    }
+    
+    /**
+     * Gets the flattened labels, entries outside the lanes are meaningless.
+     * 
+     * @return the array of labels
+     */
+    public int[] getLabels()
+    {
+        return labels;
+    }
+    
+    /**
+     * Gets the position of the first label of a lane.
+     * 
+     * @param lane index of the program in the batch
+     * @return the offset of the lane in the array of labels
+     */
+    public int getOffset(int lane)
+    {
+        return offsets[lane];
+    }
+    
+    /**
+     * Gets the number of labels in a lane.
+     * 
+     * @param lane index of the program in the batch
+     * @return the length of the lane
+     */
+    public int getLength(int lane)
+    {
+        return lengths[lane];
+    }
+    
+    /**
+     * Shortens a lane after it has been compacted in place.
+     * 
+     * @param lane index of the program in the batch
+     * @param length new length of the lane
+     */
+    public void setLength(int lane, int length)
+    {
+        if (length > lengths[lane])
+            throw new IllegalArgumentException("Lanes can't grow, " + length + " > " + lengths[lane]);
+        lengths[lane] = length;
+    }
+    
+    /**
+     * Gets the number of programs in the batch.
+     * 
+     * @return the number of lanes
+     */
+    public int size()
+    {
+        return offsets.length;
+    }
+}
@@ -25,7 +25,7 @@
 
 package gpframework.indicators.majority;
 
-import gpframework.program.Element;
+import gpframework.indicators.PhenotypeBatch;
 import gpframework.program.Program;
 import java.util.List;
 
@@ -43,24 +43,58 @@ public class ClassicMajorityFunction extends MajorityFunction
     {
         super(FunctionType.MAXIMIZATION);
         this.n = n;
+        tabulateOptimum();
     }
     
     @Override
-    public Comparable evaluate(Program solution) 
+    public ValueType getValueType()
+    {
+        return ValueType.INTEGER;
+    }
+    
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        return (int) evaluateLong(solution);
+    }
+    
+    @Override
+    public long evaluateLong(Program solution) 
     {    
-        List<Element> result = normalize(solution);
-        return result.size();
+        return cachedPhenotype(solution).length;
     }
     
     @Override
-    public boolean isOptimal(Program solution, int complexity) 
+    public long[] evaluateBatchLong(List<Program> solutions)
     {
-        int solutionLength = (complexity+1)/2;
+        PhenotypeBatch batch = normalizedBatch(solutions);
+        long[] fitness = new long[batch.size()];
         
+        for (int lane = 0; lane < fitness.length; lane++)
+            fitness[lane] = batch.getLength(lane);
+        
+        return fitness;
+    }
+    
+    @Override
+    protected long updateVariable(Program solution, long fitness, int variable, boolean kept)
+    {
+        return fitness + (kept ? 1 : -1);
+    }
+    
+    @Override
+    protected long optimalFitness(int complexity)
+    {
+        return (complexity+1)/2;
+    }
+    
+    @Override
+    public boolean isOptimal(Program solution, int complexity) 
+    {
         // If solution complexity is too low, the program is incomplete
         if (solution.complexity() < complexity)
             return false;
         
-        return solution.getCachedFitness().compareTo((Comparable) solutionLength) == 0;
+        return solution.getLongFitness() == optimum(complexity);
     }
 }
@@ -25,10 +25,14 @@
 
 package gpframework.indicators.majority;
 
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.indicators.DeltaFitnessFunction;
 import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.PhenotypeBatch;
 import gpframework.program.Element;
 import gpframework.program.Program;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,7 +40,7 @@ import java.util.Map;
 /**
  * General superclass for MAJORITY fitness function variants.
  */
-public abstract class MajorityFunction extends FitnessFunction 
+public abstract class MajorityFunction extends FitnessFunction implements DeltaFitnessFunction
 {   
     /**
      * Constructor.
@@ -86,4 +90,282 @@ public abstract class MajorityFunction extends FitnessFunction
         return normalized;
     }
     
+    @Override
+    public int[] phenotype(Program solution)
+    {
+        int[] labels = solution.getLabels();
+        int[] balance = balance(labels);
+        
+        // Compact kept variables in place, marking them as emitted
+        int size = 0;
+        for (int label : labels)
+        {
+            if (label > 0 && balance[label] >= 0)
+            {
+                balance[label] = Integer.MIN_VALUE;
+                labels[size++] = label;
+            }
+        }
+        
+        return Arrays.copyOf(labels, size);
+    }
+    
+    /**
+     * Weights are non-negative, so the fitness of the kept variables met so 
+     * far is a lower bound of the fitness: stops as soon as it exceeds the 
+     * threshold.
+     */
+    @Override
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        if (getValueType() != ValueType.INTEGER && getValueType() != ValueType.LONG)
+            return super.compareTo(solution, threshold);
+        
+        int[] labels = solution.getLabels();
+        int[] balance = balance(labels);
+        long bound = ((Number) threshold).longValue(), fitness = 0;
+        
+        for (int label : labels)
+        {
+            if (label > 0 && balance[label] >= 0)
+            {
+                balance[label] = Integer.MIN_VALUE;
+                if ((fitness += weight(solution, label)) > bound)
+                    return 1;
+            }
+        }
+        
+        return compare(fitness, bound);
+    }
+    
+    /**
+     * Contribution of a kept variable, for fitness functions with INTEGER 
+     * or LONG values.
+     * 
+     * @param solution program being evaluated
+     * @param variable absolute label of the variable
+     * @return the weight of the variable (def. 1)
+     */
+    protected long weight(Program solution, int variable)
+    {
+        return 1;
+    }
+    
+    /**
+     * Counts the balance between positive and negative literals of each 
+     * variable.
+     * 
+     * @param labels sequence of labels
+     * @return the balance of each variable, indexed by absolute label
+     */
+    protected int[] balance(int[] labels)
+    {
+        int variables = n;
+        for (int label : labels)
+            variables = Math.max(variables, Math.abs(label));
+        
+        int[] balance = new int[variables+1];
+        for (int label : labels)
+            balance[Math.abs(label)] += label > 0 ? 1 : -1;
+        
+        return balance;
+    }
+    
+    /**
+     * Flattens the labels produced by a batch of programs, keeping in each 
+     * lane the first occurrence of the variables which are kept by the 
+     * normalization.
+     * 
+     * @param solutions programs to flatten
+     * @return batch of normalized solutions
+     */
+    protected PhenotypeBatch normalizedBatch(List<Program> solutions)
+    {
+        PhenotypeBatch batch = new PhenotypeBatch(solutions);
+        int[] labels = batch.getLabels();
+        
+        int variables = n;
+        for (int label : labels)
+            variables = Math.max(variables, Math.abs(label));
+        
+        int[] balance = new int[variables+1];
+        int[] kept = new int[0];
+        
+        for (int lane = 0; lane < batch.size(); lane++)
+        {
+            int from = batch.getOffset(lane), to = from + batch.getLength(lane);
+            
+            // Count elements balance
+            for (int i = from; i < to; i++)
+                balance[Math.abs(labels[i])] += labels[i] > 0 ? 1 : -1;
+            
+            // Collect kept variables, marking them as emitted
+            if (kept.length < to - from)
+                kept = new int[to - from];
+            int size = 0;
+            for (int i = from; i < to; i++)
+            {
+                if (labels[i] > 0 && balance[labels[i]] >= 0)
+                {
+                    balance[labels[i]] = Integer.MIN_VALUE;
+                    kept[size++] = labels[i];
+                }
+            }
+            
+            // Clear the balance for the next lane, then compact the lane
+            for (int i = from; i < to; i++)
+                balance[Math.abs(labels[i])] = 0;
+            System.arraycopy(kept, 0, labels, from, size);
+            batch.setLength(lane, size);
+        }
+        
+        return batch;
+    }
+    
+    /**
+     * Generic fallback of evaluateDeltaLong(), which boxes the fitness, also
+     * used by the functions with fitness values of type OBJECT.
+     */
+    @Override
+    public Comparable evaluateDelta(Program solution, Comparable parentFitness, MutationEvent event)
+    {
+        if (getValueType() == ValueType.INTEGER || getValueType() == ValueType.LONG)
+        {
+            long fitness = evaluateDeltaLong(solution, ((Number) parentFitness).longValue(), event);
+            return fitness == NO_DELTA ? null : boxed(fitness);
+        }
+        
+        int[] changes = changedVariables(solution, event);
+        if (changes == null)
+            return null;
+        
+        Comparable fitness = parentFitness;
+        for (int change : changes)
+            fitness = updateVariable(solution, fitness, Math.abs(change), change > 0);
+        
+        return fitness;
+    }
+    
+    /**
+     * The fitness only depends on the set of variables which are kept by the 
+     * normalization, so a mutation can only change the contribution of the 
+     * variables of the changed literals.
+     */
+    @Override
+    public long evaluateDeltaLong(Program solution, long parentFitness, MutationEvent event)
+    {
+        int[] changes = changedVariables(solution, event);
+        if (changes == null)
+            return NO_DELTA;
+        
+        long fitness = parentFitness;
+        for (int change : changes)
+            fitness = updateVariable(solution, fitness, Math.abs(change), change > 0);
+        
+        return fitness;
+    }
+    
+    /**
+     * No MAJORITY function has DOUBLE fitness values.
+     */
+    @Override
+    public double evaluateDeltaDouble(Program solution, double parentFitness, MutationEvent event)
+    {
+        return Double.NaN;
+    }
+    
+    /**
+     * Finds the variables of the changed literals whose contribution to the
+     * fitness changed.
+     * 
+     * @param solution mutated program
+     * @param event effect of the mutation on the labels
+     * @return the changed variables, positive if kept after the mutation, negative otherwise
+     */
+    protected int[] changedVariables(Program solution, MutationEvent event)
+    {
+        int[] labels = solution.getLabels();
+        int[] previous = event.revert(labels);
+        
+        int[] changes = new int[2];
+        int size = 0;
+        
+        // Labels are signed variables, hence never 0: use it for missing literals
+        int oldVariable = event.getOldLabel() != null ? Math.abs(event.getOldLabel()) : 0;
+        int newVariable = event.getNewLabel() != null ? Math.abs(event.getNewLabel()) : 0;
+        
+        for (int c = 0; c < 2; c++)
+        {
+            int variable = c == 0 ? oldVariable : newVariable;
+            
+            // Skip missing literals and literals of an already checked variable
+            if (variable == 0 || (c == 1 && variable == oldVariable))
+                continue;
+            
+            boolean wasKept = isKept(previous, variable);
+            boolean isKept = isKept(labels, variable);
+            
+            if (wasKept != isKept)
+                changes[size++] = isKept ? variable : -variable;
+        }
+        
+        return Arrays.copyOf(changes, size);
+    }
+    
+    /**
+     * Adds or removes the contribution of a variable to a fitness value, for
+     * functions with fitness values of type OBJECT.
+     * 
+     * @param solution program being evaluated
+     * @param fitness fitness value to update (not modified)
+     * @param variable absolute label of the variable
+     * @param kept true to add the contribution, false to remove it
+     * @return the updated fitness value
+     */
+    protected Comparable updateVariable(Program solution, Comparable fitness, int variable, boolean kept)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't update fitness values of type OBJECT");
+    }
+    
+    /**
+     * Adds or removes the contribution of a variable to a fitness value, for
+     * functions with fitness values of type INTEGER or LONG.
+     * 
+     * @param solution program being evaluated
+     * @param fitness fitness value to update
+     * @param variable absolute label of the variable
+     * @param kept true to add the contribution, false to remove it
+     * @return the updated fitness value
+     */
+    protected long updateVariable(Program solution, long fitness, int variable, boolean kept)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't have integral fitness values");
+    }
+    
+    /**
+     * Tells if a variable survives normalization, i.e. it appears as a positive
+     * literal and its positive literals are at least as many as the negative ones.
+     * 
+     * @param labels sequence of labels
+     * @param variable absolute label of the variable
+     * @return true if the variable is kept
+     */
+    protected static boolean isKept(int[] labels, int variable)
+    {
+        boolean positive = false;
+        int balance = 0;
+        
+        for (int label : labels)
+        {
+            if (label == variable)
+            {
+                positive = true;
+                balance++;
+            }
+            else if (label == -variable)
+                balance--;
+        }
+        
+        return positive && balance >= 0;
+    }
 }
@@ -59,14 +59,52 @@ public class PositionWeightedMajorityFunction extends MajorityFunction
                 
         BitArray fitness = new BitArray(n);
         for (Element e : result)
-            fitness.bits[n-e.getLabel()] = 1;
+            fitness.set(n-e.getLabel());
         
         return fitness;
     }    
         
+    @Override
+    protected Comparable updateVariable(Program solution, Comparable fitness, int variable, boolean kept)
+    {
+        // Parent fitness is shared with the parent program, work on a copy
+        BitArray updated = new BitArray((BitArray) fitness);
+        if (kept)
+            updated.set(n-variable);
+        else
+            updated.clear(n-variable);
+        return updated;
+    }
+        
+    /**
+     * Compares the bits of the fitness from the most significant one (i.e. 
+     * from the heaviest variable), without building the BitArray.
+     */
+    @Override
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        BitArray bound = (BitArray) threshold;
+        
+        // Mark kept variables
+        int[] labels = solution.getLabels();
+        int[] balance = balance(labels);
+        for (int label : labels)
+            if (label > 0 && balance[label] >= 0)
+                balance[label] = Integer.MIN_VALUE;
+        
+        for (int i = 0; i < n; i++)
+        {
+            int bit = balance[n-i] == Integer.MIN_VALUE ? 1 : 0;
+            if (bit != bound.get(i))
+                return bit > bound.get(i) ? 1 : -1;
+        }
+        
+        return 0;
+    }
+    
     /**
-     * Checks if solution is optimal by generating a 1-bit array of size n
-     * and comparing it with the fitness of the solution.
+     * Checks if solution is optimal by checking that the fitness of the solution
+     * has only the leading bits set (without allocating the optimum).
      * 
      * @param solution
      * @param complexity
@@ -78,12 +116,9 @@ public class PositionWeightedMajorityFunction extends MajorityFunction
         int solutionLength = (complexity+1)/2;
         if (solution.complexity() < complexity)
             return false;
-                
-        BitArray optimum = new BitArray(n);
-        for(int i = 0; i < Math.min(solutionLength, n); i++)
-            optimum.bits[i] = 1;
         
-        return solution.getCachedFitness().compareTo(optimum) == 0;
+        // Optimum has the bits of the first (i.e. heaviest) variables set
+        return ((BitArray) solution.getCachedFitness()).isPrefix(Math.min(solutionLength, n));
     }
 
 }
@@ -25,7 +25,7 @@
 
 package gpframework.indicators.order;
 
-import gpframework.program.Element;
+import gpframework.indicators.PhenotypeBatch;
 import gpframework.program.Program;
 import java.util.List;
 
@@ -43,29 +43,79 @@ public class ClassicOrderFunction extends OrderFunction
     {
         super(FunctionType.MAXIMIZATION);
         this.n = n;
+        tabulateOptimum();
     }
     
     @Override
-    public Comparable evaluate(Program solution) {
+    public ValueType getValueType()
+    {
+        return ValueType.INTEGER;
+    }
+    
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        return (int) evaluateLong(solution);
+    }
+    
+    @Override
+    public long evaluateLong(Program solution) {
+        
+        if (largeScale)
+            return firstLiteralWeights(solution, collectOffHeap(solution), Long.MAX_VALUE);
         
-        List<Element> result = normalize(solution);
+        int size = normalizeLabels(solution);
         
         int fitness = 0;
        
-        for (Element e : result)
-            if (e.getLabel() > 0)
+        for (int i = 0; i < size; i++)
+            if (labelBuffer[i] > 0)
                 fitness++;
         
         return fitness;
     }
 
+    @Override
+    public long[] evaluateBatchLong(List<Program> solutions)
+    {
+        PhenotypeBatch batch = normalizedBatch(solutions);
+        int[] labels = batch.getLabels();
+        long[] fitness = new long[batch.size()];
+        
+        for (int lane = 0; lane < fitness.length; lane++)
+        {
+            int offset = batch.getOffset(lane), length = batch.getLength(lane);
+            
+            // Branch-free count of positive first literals
+            int positives = 0;
+            for (int i = offset; i < offset+length; i++)
+                positives += labels[i] > 0 ? 1 : 0;
+            
+            fitness[lane] = positives;
+        }
+        
+        return fitness;
+    }
+
+    @Override
+    protected long updateVariable(Program solution, long fitness, int variable, boolean counted)
+    {
+        return fitness + (counted ? 1 : -1);
+    }
+
+    @Override
+    protected long optimalFitness(int complexity)
+    {
+        return (complexity+1)/2;
+    }
+    
     @Override
     public boolean isOptimal(Program solution, int complexity) 
     {
-        int solutionLength = (complexity+1)/2;
+        // If solution complexity is too low, the program is incomplete
         if (solution.complexity() < complexity)
             return false;
         
-        return solution.getCachedFitness().compareTo((Comparable) solutionLength) == 0;
+        return solution.getLongFitness() == optimum(complexity);
     }
 }
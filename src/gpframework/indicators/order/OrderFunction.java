@@ -25,17 +25,32 @@
 
 package gpframework.indicators.order;
 
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.indicators.DeltaFitnessFunction;
 import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.PhenotypeBatch;
 import gpframework.program.Element;
 import gpframework.program.Program;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Superclass for ORDER fitness function variants.
  */
-public abstract class OrderFunction extends FitnessFunction 
+public abstract class OrderFunction extends FitnessFunction implements DeltaFitnessFunction
 {
+    /**
+     * Variables (absolute labels) already encountered while normalizing.
+     */
+    protected SignedLabelTable seen;
+    
+    /**
+     * Labels of the normalized solution, filled by normalizeLabels().
+     */
+    protected int[] labelBuffer;
+    
     /**
      * Constructor.
      * 
@@ -50,21 +65,339 @@ public abstract class OrderFunction extends FitnessFunction
     public List<Element> normalize(Program solution)
     {
         List<Element> original = (List<Element>) solution.parse();
-        
         List<Element> normalized = new ArrayList<Element>();
-        List<Integer> normalizedValues = new ArrayList<Integer>();
         
+        resetSeen();
         
+        // Keep only the first literal of each variable
         for(Element e : original)
         {
-            if (!normalizedValues.contains(-e.getLabel()) && !normalizedValues.contains(e.getLabel()))
+            if (!seen.isSeen(e.getLabel()))
             {
                 normalized.add(e);
-                normalizedValues.add(e.getLabel());
+                seen.mark(e.getLabel());
             }
         }
         
         return normalized;
     }
     
+    /**
+     * Normalizes a solution into labelBuffer, without building
+     * the intermediate list of elements.
+     * 
+     * @param solution program to normalize
+     * @return number of entries of labelBuffer belonging to the normalized solution
+     */
+    protected int normalizeLabels(Program solution)
+    {
+        List<Element> original = (List<Element>) solution.parse();
+        
+        resetSeen();
+        
+        int size = 0;
+        for(Element e : original)
+        {
+            int label = e.getLabel();
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                
+                // One entry per variable, the buffer only grows if labels exceed n
+                if (size == labelBuffer.length)
+                    growBuffer();
+                
+                labelBuffer[size] = label;
+                size++;
+            }
+        }
+        
+        return size;
+    }
+    
+    /**
+     * Flattens the labels produced by a batch of programs, keeping only the 
+     * first literal of each variable in each lane.
+     * 
+     * @param solutions programs to flatten
+     * @return batch of normalized solutions
+     */
+    protected PhenotypeBatch normalizedBatch(List<Program> solutions)
+    {
+        resetSeen();
+        
+        PhenotypeBatch batch = new PhenotypeBatch(solutions);
+        batch.keepFirstOccurrences(seen);
+        return batch;
+    }
+    
+    @Override
+    public int[] phenotype(Program solution)
+    {
+        int[] labels = solution.getLabels();
+        
+        resetSeen();
+        
+        // Compact first literals of each variable in place
+        int size = 0;
+        for (int label : labels)
+        {
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                labels[size++] = label;
+            }
+        }
+        
+        return Arrays.copyOf(labels, size);
+    }
+    
+    /**
+     * In large scale mode, compacts the first literals of each variable in 
+     * place in the off-heap label buffer.
+     */
+    @Override
+    protected IntBuffer phenotypeBuffer(Program solution)
+    {
+        if (!largeScale)
+            return super.phenotypeBuffer(solution);
+        
+        IntBuffer labels = collectOffHeap(solution);
+        resetSeen();
+        
+        int size = 0;
+        for (int i = 0; i < labels.limit(); i++)
+        {
+            int label = labels.get(i);
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                labels.put(size++, label);
+            }
+        }
+        
+        labels.limit(size);
+        return labels;
+    }
+    
+    /**
+     * Weights are non-negative, so the fitness of a prefix of the solution is 
+     * a lower bound of its fitness: stops as soon as it exceeds the threshold.
+     */
+    @Override
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        if (getValueType() != ValueType.INTEGER && getValueType() != ValueType.LONG)
+            return super.compareTo(solution, threshold);
+        
+        long bound = ((Number) threshold).longValue();
+        IntBuffer labels = largeScale ? collectOffHeap(solution) : IntBuffer.wrap(solution.getLabels());
+        
+        long fitness = firstLiteralWeights(solution, labels, bound);
+        return fitness > bound ? 1 : compare(fitness, bound);
+    }
+    
+    /**
+     * Sums the weights of the variables whose first literal is positive, for
+     * fitness functions with INTEGER or LONG values. Used by the large scale 
+     * mode on the off-heap label buffer.
+     * 
+     * @param solution program being evaluated
+     * @param labels labels produced by the program
+     * @param bound the sum is returned as soon as it exceeds this value
+     * @return the sum of the weights (partial if greater than bound)
+     */
+    protected long firstLiteralWeights(Program solution, IntBuffer labels, long bound)
+    {
+        long fitness = 0;
+        
+        resetSeen();
+        for (int i = 0; i < labels.limit(); i++)
+        {
+            int label = labels.get(i);
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                if (label > 0 && (fitness += weight(solution, label)) > bound)
+                    return fitness;
+            }
+        }
+        
+        return fitness;
+    }
+    
+    /**
+     * Contribution of a variable whose first literal is positive, for
+     * fitness functions with INTEGER or LONG values.
+     * 
+     * @param solution program being evaluated
+     * @param variable absolute label of the variable
+     * @return the weight of the variable (def. 1)
+     */
+    protected long weight(Program solution, int variable)
+    {
+        return 1;
+    }
+    
+    /**
+     * Generic fallback of evaluateDeltaLong(), which boxes the fitness, also
+     * used by the functions with fitness values of type OBJECT.
+     */
+    @Override
+    public Comparable evaluateDelta(Program solution, Comparable parentFitness, MutationEvent event)
+    {
+        if (getValueType() == ValueType.INTEGER || getValueType() == ValueType.LONG)
+        {
+            long fitness = evaluateDeltaLong(solution, ((Number) parentFitness).longValue(), event);
+            return fitness == NO_DELTA ? null : boxed(fitness);
+        }
+        
+        int[] changes = changedVariables(solution, event);
+        if (changes == null)
+            return null;
+        
+        Comparable fitness = parentFitness;
+        for (int change : changes)
+            fitness = updateVariable(solution, fitness, Math.abs(change), change > 0);
+        
+        return fitness;
+    }
+    
+    /**
+     * The fitness only depends on the set of variables whose first literal is
+     * positive, so a mutation can only change the contribution of the variables
+     * of the changed literals.
+     */
+    @Override
+    public long evaluateDeltaLong(Program solution, long parentFitness, MutationEvent event)
+    {
+        int[] changes = changedVariables(solution, event);
+        if (changes == null)
+            return NO_DELTA;
+        
+        long fitness = parentFitness;
+        for (int change : changes)
+            fitness = updateVariable(solution, fitness, Math.abs(change), change > 0);
+        
+        return fitness;
+    }
+    
+    /**
+     * No ORDER function has DOUBLE fitness values.
+     */
+    @Override
+    public double evaluateDeltaDouble(Program solution, double parentFitness, MutationEvent event)
+    {
+        return Double.NaN;
+    }
+    
+    /**
+     * Finds the variables of the changed literals whose contribution to the
+     * fitness changed.
+     * 
+     * @param solution mutated program
+     * @param event effect of the mutation on the labels
+     * @return the changed variables, positive if counted after the mutation, negative otherwise; null in large scale mode
+     */
+    protected int[] changedVariables(Program solution, MutationEvent event)
+    {
+        // Reverting the event would copy the whole sequence on the heap
+        if (largeScale)
+            return null;
+        
+        int[] labels = solution.getLabels();
+        int[] previous = event.revert(labels);
+        
+        int[] changes = new int[2];
+        int size = 0;
+        
+        // Labels are signed variables, hence never 0: use it for missing literals
+        int oldVariable = event.getOldLabel() != null ? Math.abs(event.getOldLabel()) : 0;
+        int newVariable = event.getNewLabel() != null ? Math.abs(event.getNewLabel()) : 0;
+        
+        for (int c = 0; c < 2; c++)
+        {
+            int variable = c == 0 ? oldVariable : newVariable;
+            
+            // Skip missing literals and literals of an already checked variable
+            if (variable == 0 || (c == 1 && variable == oldVariable))
+                continue;
+            
+            boolean wasCounted = firstLiteral(previous, variable) > 0;
+            boolean isCounted = firstLiteral(labels, variable) > 0;
+            
+            if (wasCounted != isCounted)
+                changes[size++] = isCounted ? variable : -variable;
+        }
+        
+        return Arrays.copyOf(changes, size);
+    }
+    
+    /**
+     * Adds or removes the contribution of a variable to a fitness value, for
+     * functions with fitness values of type OBJECT.
+     * 
+     * @param solution program being evaluated
+     * @param fitness fitness value to update (not modified)
+     * @param variable absolute label of the variable
+     * @param counted true to add the contribution, false to remove it
+     * @return the updated fitness value
+     */
+    protected Comparable updateVariable(Program solution, Comparable fitness, int variable, boolean counted)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't update fitness values of type OBJECT");
+    }
+    
+    /**
+     * Adds or removes the contribution of a variable to a fitness value, for
+     * functions with fitness values of type INTEGER or LONG.
+     * 
+     * @param solution program being evaluated
+     * @param fitness fitness value to update
+     * @param variable absolute label of the variable
+     * @param counted true to add the contribution, false to remove it
+     * @return the updated fitness value
+     */
+    protected long updateVariable(Program solution, long fitness, int variable, boolean counted)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't have integral fitness values");
+    }
+    
+    /**
+     * Finds the first literal of a variable in a sequence of labels.
+     * 
+     * @param labels sequence of labels
+     * @param variable absolute label of the variable
+     * @return the first literal of the variable, 0 if the variable is missing
+     */
+    protected static int firstLiteral(int[] labels, int variable)
+    {
+        for (int label : labels)
+            if (label == variable || label == -variable)
+                return label;
+        return 0;
+    }
+    
+    /**
+     * Clears the table of seen variables, allocating it and the output buffers
+     * on first use (n is only known after the subclass constructors).
+     */
+    protected void resetSeen()
+    {
+        if (seen == null)
+        {
+            seen = new SignedLabelTable(n);
+            labelBuffer = new int[Math.max(n, 1)];
+        }
+        else
+            seen.reset();
+    }
+    
+    /**
+     * Doubles the size of the output buffer.
+     */
+    private void growBuffer()
+    {
+        labelBuffer = Arrays.copyOf(labelBuffer, 2*labelBuffer.length);
+    }
 }
@@ -26,9 +26,7 @@
 package gpframework.indicators.order;
 
 import gpframework.indicators.BitArray;
-import gpframework.program.Element;
 import gpframework.program.Program;
-import java.util.List;
 
 /**
  * Variant of ORDER fitness function where weights have values w_i = 2^{n-i}.
@@ -49,29 +47,61 @@ public class PositionWeightedOrderFunction extends OrderFunction
     @Override
     public Comparable evaluate(Program solution) {
         
-        List<Element> result = normalize(solution);
+        int size = normalizeLabels(solution);
                 
         BitArray fitness = new BitArray(n);
         
-        for (Element e : result)
-            if (e.getLabel() > 0)
-                fitness.bits[n-e.getLabel()] = 1;
+        for (int i = 0; i < size; i++)
+            if (labelBuffer[i] > 0)
+                fitness.set(n-labelBuffer[i]);
 
         return fitness;
     }
 
     @Override
-    public boolean isOptimal(Program solution, int complexity) 
+    protected Comparable updateVariable(Program solution, Comparable fitness, int variable, boolean counted)
     {
+        // Parent fitness is shared with the parent program, work on a copy
+        BitArray updated = new BitArray((BitArray) fitness);
+        if (counted)
+            updated.set(n-variable);
+        else
+            updated.clear(n-variable);
+        return updated;
+    }
+
+    /**
+     * Compares the bits of the fitness from the most significant one (i.e. 
+     * from the heaviest variable), without building the BitArray.
+     */
+    @Override
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        BitArray bound = (BitArray) threshold;
+        
+        resetSeen();
+        for (int label : solution.getLabels())
+            if (!seen.isSeen(label))
+                seen.mark(label);
+        
+        for (int i = 0; i < n; i++)
+        {
+            int bit = seen.state(n-i) == SignedLabelTable.POSITIVE ? 1 : 0;
+            if (bit != bound.get(i))
+                return bit > bound.get(i) ? 1 : -1;
+        }
+        
+        return 0;
+    }
+
+    @Override
+    public boolean isOptimal(Program solution, int complexity)
+    {
+        int solutionLength = (complexity+1)/2;
         if (solution.complexity() < complexity)
             return false;
         
-        int solutionLength = (complexity+1)/2;
-                
-        BitArray optimum = new BitArray(n);
-        for(int i = 0; i < Math.min(solutionLength, n); i++)
-            optimum.bits[i] = 1;
-
-        return solution.getCachedFitness().compareTo(optimum) == 0;
+        // Optimum has the bits of the first (i.e. heaviest) variables set
+        return ((BitArray) solution.getCachedFitness()).isPrefix(Math.min(solutionLength, n));
     }
 }
@@ -25,16 +25,23 @@
 
 package gpframework.indicators.order;
 
-import gpframework.program.Element;
+import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.PhenotypeBatch;
+import gpframework.indicators.WeightedFitnessFunction;
 import gpframework.program.Program;
-import gpframework.program.ordermajority.OMElementFactory;
+import gpframework.program.ordermajority.WeightTable;
 import java.util.List;
 
 /**
  * Variant of ORDER fitness function where weights are given randomly.
  */
-public class RandomWeightedOrderFunction extends OrderFunction
+public class RandomWeightedOrderFunction extends OrderFunction implements WeightedFitnessFunction
 {    
+    /**
+     * Weights of the variables, shared with the element factory.
+     */
+    protected WeightTable weights;
+    
     /**
      * Constructor.
      * 
@@ -45,35 +52,106 @@ public class RandomWeightedOrderFunction extends OrderFunction
         super(FunctionType.MAXIMIZATION);
         this.n = n;
     }
+
+    @Override
+    public FitnessFunction copy()
+    {
+        FitnessFunction copy = super.copy();
+        ((WeightedFitnessFunction) copy).setWeightTable(weights);
+        return copy;
+    }
+
+    @Override
+    public void setWeightTable(WeightTable weights)
+    {
+        this.weights = weights;
+        tabulateOptimum();
+    }
+
+    @Override
+    public WeightTable getWeightTable()
+    {
+        return weights;
+    }
+    
+    @Override
+    public ValueType getValueType()
+    {
+        return weights == null || weights.fitsInInteger() ? ValueType.INTEGER : ValueType.LONG;
+    }
+    
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        return boxed(evaluateLong(solution));
+    }
     
     @Override
-    public Comparable evaluate(Program solution) {
+    public long evaluateLong(Program solution) {
+        
+        if (largeScale)
+            return firstLiteralWeights(solution, collectOffHeap(solution), Long.MAX_VALUE);
         
-        List<Element> result = normalize(solution);
-        int fitness = 0;
+        int size = normalizeLabels(solution);
+        long fitness = 0;
        
-        for (Element e : result) 
-            if (e.getLabel() > 0)
-                fitness += e.getWeight();
+        for (int i = 0; i < size; i++) 
+            if (labelBuffer[i] > 0)
+                fitness += weights.getWeight(labelBuffer[i]);
         
         return fitness;
     }
 
     @Override
-    public boolean isOptimal(Program solution, int complexity) {
+    public long[] evaluateBatchLong(List<Program> solutions)
+    {
+        PhenotypeBatch batch = normalizedBatch(solutions);
+        int[] labels = batch.getLabels();
+        long[] fitness = new long[batch.size()];
         
+        for (int lane = 0; lane < fitness.length; lane++)
+        {
+            int offset = batch.getOffset(lane), length = batch.getLength(lane);
+            
+            // Weighted sum of the variables with a positive first literal
+            long sum = 0;
+            for (int i = offset; i < offset+length; i++)
+                if (labels[i] > 0)
+                    sum += weights.getWeight(labels[i]);
+            
+            fitness[lane] = sum;
+        }
+        
+        return fitness;
+    }
+
+    @Override
+    protected long updateVariable(Program solution, long fitness, int variable, boolean counted)
+    {
+        int weight = weights.getWeight(variable);
+        return fitness + (counted ? weight : -weight);
+    }
+
+    @Override
+    protected long optimalFitness(int complexity)
+    {
+        // Compute max fitness with given complexity (sum of the largest weights)
         int solutionLength = (complexity+1)/2;
+        return weights.getOptimum(solutionLength);
+    }
+
+    @Override
+    protected long weight(Program solution, int variable)
+    {
+        return weights.getWeight(variable);
+    }
+
+    @Override
+    public boolean isOptimal(Program solution, int complexity) 
+    {
         if (solution.complexity() < complexity)
             return false;
-                
-        // Otherwise check if it's optimal wrt. its complexity
-        Element first = ((Element)solution.getTerminal());
-        OMElementFactory elementFactory = (OMElementFactory) first.getFactory();
-        
-        // Compute max fitness with given complexity
-        int maxFitness = elementFactory.getFitnessBySize(Math.min(solutionLength, n));
         
-        // Return comparison
-        return solution.getCachedFitness().compareTo((Comparable) maxFitness) == 0;
+        return solution.getLongFitness() == optimum(complexity);
     }
 }
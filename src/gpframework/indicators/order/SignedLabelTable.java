@@ -0,0 +1,137 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.indicators.order;
+
+import java.util.Arrays;
+
+/**
+ * Dense tri-state table, indexed by the absolute value of a label, recording
+ * whether a variable has not been seen yet, has been seen as a positive literal
+ * or has been seen as a negative literal. Resetting the table is O(1): each
+ * entry stores the epoch in which it was written (with the sign of the literal)
+ * and entries from previous epochs are read as unseen.
+ */
+public class SignedLabelTable
+{
+    /** State of a variable which has not been seen in the current epoch. */
+    public static final int UNSEEN = 0;
+
+    /** State of a variable first seen as a positive literal. */
+    public static final int POSITIVE = 1;
+
+    /** State of a variable first seen as a negative literal. */
+    public static final int NEGATIVE = -1;
+
+    /**
+     * Signed epoch stamps, indexed by the absolute value of the label.
+     */
+    private int[] stamps;
+
+    /**
+     * Current epoch, always strictly positive.
+     */
+    private int epoch = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param n largest absolute value of the labels to store
+     */
+    public SignedLabelTable(int n)
+    {
+        stamps = new int[n+1];
+    }
+
+    /**
+     * Forgets all the marked labels.
+     */
+    public void reset()
+    {
+        epoch++;
+
+        // On wrap-around, clear the stamps explicitly
+        if (epoch == Integer.MAX_VALUE)
+        {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Retrieves the state of the variable of a label.
+     *
+     * @param label label to look up (sign is ignored)
+     * @return UNSEEN, POSITIVE or NEGATIVE
+     */
+    public int state(int label)
+    {
+        int index = Math.abs(label);
+        if (index >= stamps.length)
+            return UNSEEN;
+
+        int stamp = stamps[index];
+        if (stamp == epoch)
+            return POSITIVE;
+        if (stamp == -epoch)
+            return NEGATIVE;
+        return UNSEEN;
+    }
+
+    /**
+     * Tells if either the label or its negation has been marked.
+     *
+     * @param label label to look up
+     * @return true if the variable of the label has been seen
+     */
+    public boolean isSeen(int label)
+    {
+        return state(label) != UNSEEN;
+    }
+
+    /**
+     * Marks the variable of a label as seen, with the sign of the label.
+     *
+     * @param label label to mark
+     */
+    public void mark(int label)
+    {
+        int index = Math.abs(label);
+        if (index >= stamps.length)
+            stamps = Arrays.copyOf(stamps, Math.max(index+1, 2*stamps.length));
+
+        stamps[index] = label < 0 ? -epoch : epoch;
+    }
+
+    /**
+     * Largest absolute label value which can be stored without growing the table.
+     *
+     * @return the capacity of the table
+     */
+    public int capacity()
+    {
+        return stamps.length - 1;
+    }
+}
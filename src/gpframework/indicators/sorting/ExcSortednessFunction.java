@@ -25,16 +25,20 @@
 
 package gpframework.indicators.sorting;
 
+import gpframework.indicators.OffHeapIntBuffer;
 import gpframework.program.Program;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.IntBuffer;
 
 /**
  * Implements the EXC sortedness measure (number of exchanges required).
  */
 public class ExcSortednessFunction extends SortednessFunction 
 {    
+    /**
+     * Ranks of the labels of the solution being evaluated.
+     */
+    private OffHeapIntBuffer ranks;
+    
     /**
      * Constructor. 
      * 
@@ -44,107 +48,99 @@ public class ExcSortednessFunction extends SortednessFunction
     {
         super(FunctionType.MINIMIZATION);
         this.n = n;
+        tabulateOptimum();
+    }
+    
+    @Override
+    public ValueType getValueType()
+    {
+        return ValueType.INTEGER;
     }
     
     @Override
-    public Comparable evaluate(Program solution) 
+    public Comparable evaluate(Program solution)
     {
-        List<Integer> result = normalize(solution);      
+        return (int) evaluateLong(solution);
+    }
+    
+    /**
+     * Counts the cycles of the permutation obtained by replacing each label 
+     * with its rank, computed with a Fenwick tree in O(l log n) on a sequence 
+     * of l labels.
+     */
+    @Override
+    public long evaluateLong(Program solution) 
+    {
+        IntBuffer result = purged(solution);
+        int size = result.limit();
         
         int fitness = 0;
         
         // If the solution is incomplete
-        if ( result.size() != getN() ) 
+        if ( size != getN() ) 
         {
             // One element: no exchange required
-            if (result.isEmpty()) {
+            if (size == 0) {
                 return getN()+1;
             }
             
             // One element: no exchange required
-            if (result.size()==1) {
+            if (size==1) {
                 return getN();
             }
             
             // The +1 was added for the PPSN2012 version
-            fitness = getN()-result.size() + 1; 
-
-            int[] numbers = new int[result.size()];
-            int[] original = new int[result.size()];
-            
-            for (int i = 0; i<numbers.length; i++) {
-                numbers[i] = result.get(i);
-                original[i] = result.get(i);
-            }
-            
-            // Sort into ascending order. Important: number go 0..n-1
-            Arrays.sort(numbers);
-            
-            int[] newNumbers = new int[numbers.length];
-            
-            for (int i=0; i<numbers.length; i++) {
-                int target = numbers[i]; //ith number
-                
-                for (int j=0; j<numbers.length; j++) {
-                    if (original[j]==target) {
-                        newNumbers[j] = i;
-                    }
-                }
-            }
-            
-            List<Integer> newList = new ArrayList<Integer>(result.size());
-            for (int i = 0; i<newNumbers.length; i++) {
-                newList.add(newNumbers[i]);
-            }
-            result = newList;
+            fitness = getN()-size + 1; 
         }
         
+        // Replace labels with their ranks (identity on complete solutions)
+        IntBuffer counts = counts(result);
+        for (int i = 0; i < size; i++)
+            count(counts, result.get(i), 1);
+        
+        if (ranks == null)
+            ranks = new OffHeapIntBuffer(n);
+        IntBuffer permutation = ranks.get(size);
+        for (int i = 0; i < size; i++)
+            permutation.put(i, countBelow(counts, result.get(i)));
+        
+        for (int i = 0; i < size; i++)
+            count(counts, result.get(i), -1);
         
-        // Compute the number of cycles
-        boolean[] visited = new boolean[result.size()];
+        // Compute the number of cycles, marking visited positions
         int cycles = 0;
-
-        for (int i = 0; i < result.size(); i++)
+        for (int i = 0; i < size; i++)
         {
-            int current = i;
-            boolean cycling = false;
+            if (permutation.get(i) < 0)
+                continue;
             
-            while (true)
+            cycles++;
+            for (int current = i; permutation.get(current) >= 0; )
             {
-                if (!cycling && visited[current])
-                    break;
-            
-            
-                if (!visited[current])
-                {
-                    visited[current] = true;
-                    current = result.get(current);
-                    if (!cycling) cycling = true;
-                } else {
-                    cycling = false;
-                    cycles++;
-                    break;
-                }
+                int next = permutation.get(current);
+                permutation.put(current, -1);
+                current = next;
             }
         }
         
-        cycles = result.size()-cycles;
-        fitness += cycles;
+        fitness += size-cycles;
         
         return fitness;
-        
     }
 
     @Override
-    public boolean isOptimal(Program solution, int complexity) 
+    protected long optimalFitness(int complexity)
     {
-        if (complexity == 0 || complexity == 1) return true;
-        
         int solutionLength = (complexity+1)/2;
         int penalty = getN() == solutionLength ? 0 : 1;             // penalty because of missing elements
-        int optimalFitness = (getN() - solutionLength) + penalty;   // missing elements
-        
-        return solution.getCachedFitness().compareTo((Comparable) optimalFitness) == 0;
+        return (getN() - solutionLength) + penalty;                 // missing elements
+    }
+
+    @Override
+    public boolean isOptimal(Program solution, int complexity) 
+    {
+        if (complexity == 0 || complexity == 1) return true;
+        return solution.getLongFitness() == optimum(complexity);
     }
     
 }
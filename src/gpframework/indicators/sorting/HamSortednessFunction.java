@@ -25,7 +25,9 @@
 
 package gpframework.indicators.sorting;
 
+import gpframework.indicators.PhenotypeBatch;
 import gpframework.program.Program;
+import java.nio.IntBuffer;
 import java.util.List;
 
 /**
@@ -42,15 +44,28 @@ public class HamSortednessFunction extends SortednessFunction
     {
         super(FunctionType.MAXIMIZATION);
         this.n = n;
+        tabulateOptimum();
     }
     
     @Override
-    public Comparable evaluate(Program solution) 
+    public ValueType getValueType()
+    {
+        return ValueType.INTEGER;
+    }
+    
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        return (int) evaluateLong(solution);
+    }
+    
+    @Override
+    public long evaluateLong(Program solution) 
     {   
         int fitness = 0;
-        List<Integer> result = normalize(solution);    
+        IntBuffer result = purged(solution);
 
-        for (int i = 0; i < result.size(); i++)
+        for (int i = 0; i < result.limit(); i++)
             if (result.get(i)==i) 
                 fitness++;
 
@@ -58,10 +73,101 @@ public class HamSortednessFunction extends SortednessFunction
         return fitness;
     }
 
+    /**
+     * The number of labels in their final position can only grow along the 
+     * purged sequence: stops as soon as it exceeds the threshold.
+     */
+    @Override
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        if (largeScale)
+            return super.compareTo(solution, threshold);
+        
+        long bound = ((Number) threshold).longValue();
+        int matches = 0, position = 0;
+        
+        resetSeen();
+        for (int label : solution.getLabels())
+        {
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                if (label == position++ && ++matches > bound)
+                    return 1;
+            }
+        }
+        
+        return compare(matches, bound);
+    }
+    
+    @Override
+    public long[] evaluateBatchLong(List<Program> solutions)
+    {
+        PhenotypeBatch batch = purgedBatch(solutions);
+        int[] labels = batch.getLabels();
+        long[] fitness = new long[batch.size()];
+        
+        for (int lane = 0; lane < fitness.length; lane++)
+        {
+            int offset = batch.getOffset(lane), length = batch.getLength(lane);
+            
+            // Branch-free count of labels in their final position
+            int matches = 0;
+            for (int i = 0; i < length; i++)
+                matches += labels[offset+i] == i ? 1 : 0;
+            
+            fitness[lane] = matches;
+        }
+        
+        return fitness;
+    }
+
+    @Override
+    protected long insertion(long fitness, int[] shorter, int[] longer, int position)
+    {
+        return fitness + difference(shorter, longer, position);
+    }
+
+    @Override
+    protected long removal(long fitness, int[] shorter, int[] longer, int position)
+    {
+        return fitness - difference(shorter, longer, position);
+    }
+    
+    /**
+     * Difference of fitness between two sequences, differing by one inserted label.
+     * Only the positions from the insertion point onwards can differ.
+     * 
+     * @param shorter sequence without the label
+     * @param longer sequence with the label
+     * @param position position of the label in the longer sequence
+     * @return fitness of the longer sequence minus fitness of the shorter one
+     */
+    private int difference(int[] shorter, int[] longer, int position)
+    {
+        int difference = 0;
+        
+        for (int i = position; i < longer.length; i++)
+            if (longer[i] == i) 
+                difference++;
+        
+        for (int i = position; i < shorter.length; i++)
+            if (shorter[i] == i) 
+                difference--;
+        
+        return difference;
+    }
+
+    @Override
+    protected long optimalFitness(int complexity)
+    {
+        return (complexity+1)/2;
+    }
+
     @Override
     public boolean isOptimal(Program solution, int complexity) 
     {
         if (complexity == 0 || complexity == 1) return true;
-        return solution.getCachedFitness().compareTo((Comparable) ((complexity+1)/2)) == 0;
+        return solution.getLongFitness() == optimum(complexity);
     }
 }
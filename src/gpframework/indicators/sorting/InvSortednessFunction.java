@@ -26,7 +26,7 @@
 package gpframework.indicators.sorting;
 
 import gpframework.program.Program;
-import java.util.List;
+import java.nio.IntBuffer;
 
 /**
  * Fitness function seeking to maximize the number of correctly ordered pairs.
@@ -40,32 +40,149 @@ public class InvSortednessFunction extends SortednessFunction
     {
         super(FunctionType.MAXIMIZATION);
         this.n = n;
+        tabulateOptimum();
     }
     
     @Override
-    public Comparable evaluate(Program solution) {
-        // Parse program
-        List<Integer> result = normalize(solution);    
-        
-        double fitness = 0, size = result.size();
+    public ValueType getValueType()
+    {
+        return ValueType.DOUBLE;
+    }
+    
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        return evaluateDouble(solution);
+    }
+    
+    /**
+     * Counts the correctly ordered pairs closed by each label with a Fenwick
+     * tree, O(l log n) on a sequence of l labels.
+     */
+    @Override
+    public double evaluateDouble(Program solution) {
+        IntBuffer result = purged(solution);
+        int size = result.limit();
         
         if (size == 1)
             return 0.5;        
         
-        for (int i = 0; i<size; i++)
-            for (int j = i+1; j<size; j++)
-                if (result.get(i)<result.get(j)) fitness++;
+        IntBuffer counts = counts(result);
+        long fitness = 0;
+        
+        for (int j = 0; j < size; j++)
+        {
+            fitness += countBelow(counts, result.get(j));
+            count(counts, result.get(j), 1);
+        }
+        
+        // Leave the tree empty
+        for (int j = 0; j < size; j++)
+            count(counts, result.get(j), -1);
         
         return fitness;
     }
 
+    /**
+     * The number of correctly ordered pairs can only grow along the purged 
+     * sequence: counts them with the Fenwick tree while purging, O(log n) per
+     * label as in evaluateDouble(), and stops as soon as they exceed the
+     * threshold.
+     */
+    @Override
+    public int compareTo(Program solution, Comparable threshold)
+    {
+        double bound = ((Number) threshold).doubleValue();
+        
+        IntBuffer labels = largeScale ? collectOffHeap(solution) : IntBuffer.wrap(solution.getLabels());
+        IntBuffer counts = counts(labels);
+        long pairs = 0;
+        int size = 0;
+        
+        // Purge in place, counting the pairs closed by each new label
+        resetSeen();
+        for (int i = 0; i < labels.limit() && pairs <= bound; i++)
+        {
+            int label = labels.get(i);
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                pairs += countBelow(counts, label);
+                count(counts, label, 1);
+                labels.put(size++, label);
+            }
+        }
+        
+        // Leave the tree empty
+        for (int j = 0; j < size; j++)
+            count(counts, labels.get(j), -1);
+        
+        if (pairs > bound)
+            return 1;
+        return Double.compare(size == 1 ? 0.5 : pairs, bound);
+    }
+
+    @Override
+    protected double insertion(double fitness, int[] shorter, int[] longer, int position)
+    {
+        double pairs = pairs(fitness, shorter.length) + difference(longer, position);
+        return longer.length == 1 ? 0.5 : pairs;
+    }
+
+    @Override
+    protected double removal(double fitness, int[] shorter, int[] longer, int position)
+    {
+        double pairs = pairs(fitness, longer.length) - difference(longer, position);
+        return shorter.length == 1 ? 0.5 : pairs;
+    }
+    
+    /**
+     * Number of correctly ordered pairs from a fitness value (which is 0.5
+     * instead of 0 for one-element sequences).
+     * 
+     * @param fitness fitness value
+     * @param size length of the evaluated sequence
+     * @return the number of correctly ordered pairs
+     */
+    private double pairs(double fitness, int size)
+    {
+        return size == 1 ? 0 : fitness;
+    }
+    
+    /**
+     * Number of correctly ordered pairs involving the label at a position.
+     * 
+     * @param longer sequence with the label
+     * @param position position of the label
+     * @return fitness of the longer sequence minus fitness of the shorter one
+     */
+    private int difference(int[] longer, int position)
+    {
+        int difference = 0;
+        
+        for (int j = 0; j < position; j++)
+            if (longer[j] < longer[position]) 
+                difference++;
+        
+        for (int j = position+1; j < longer.length; j++)
+            if (longer[position] < longer[j]) 
+                difference++;
+        
+        return difference;
+    }
+
+    @Override
+    protected long optimalFitness(int complexity)
+    {
+        long solutionLength = (complexity+1)/2;
+        return (solutionLength-1) * solutionLength / 2;
+    }
+
     @Override
     public boolean isOptimal(Program solution, int complexity) 
     {
         if (complexity == 0 || complexity == 1) return true;
-        
-        double solutionLength = (complexity+1)/2;
-        return solution.getCachedFitness().compareTo((Comparable) ((solutionLength-1) * (solutionLength / 2.0))) == 0;
+        return solution.getDoubleFitness() == optimum(complexity);
     }
     
 }
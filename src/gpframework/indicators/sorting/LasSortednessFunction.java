@@ -25,8 +25,9 @@
 
 package gpframework.indicators.sorting;
 
+import gpframework.indicators.OffHeapIntBuffer;
 import gpframework.program.Program;
-import java.util.List;
+import java.nio.IntBuffer;
 
 /**
  * Fitness function implementing the maximization of the longest ascending
@@ -34,6 +35,11 @@ import java.util.List;
  */
 public class LasSortednessFunction extends SortednessFunction 
 {    
+    /**
+     * Smallest tail of the ascending subsequences of each length.
+     */
+    private OffHeapIntBuffer tails;
+    
     /**
      * Constructor.
      * 
@@ -43,48 +49,67 @@ public class LasSortednessFunction extends SortednessFunction
     {
         super(FunctionType.MAXIMIZATION);
         this.n = n;
+        tabulateOptimum();
     }
 
     @Override
-    public Comparable evaluate(Program solution) 
+    public ValueType getValueType()
     {
-        // Based on code based on http://www.algorithmist.com/index.php/Longest_Increasing_Subsequence.c
-        int fitness = 0;
-        List<Integer> result = normalize(solution);    
-        
-        //System.out.println(result);
+        return ValueType.INTEGER;
+    }
+    
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        return (int) evaluateLong(solution);
+    }
+    
+    /**
+     * Patience sorting, O(l log l) on a sequence of l labels: the smallest 
+     * tail of the ascending subsequences of each length is kept off-heap.
+     */
+    @Override
+    public long evaluateLong(Program solution) 
+    {
+        IntBuffer result = purged(solution);
         
-        int[] best = new int[result.size()];
-        int[] prev = new int[result.size()];
+        if (tails == null)
+            tails = new OffHeapIntBuffer(n);
+        IntBuffer tail = tails.get(result.limit());
         
-        for (int i = 0; i < result.size(); i++ )  
+        int fitness = 0;
+        for (int i = 0; i < result.limit(); i++)
         {
-            best[i] = 1;
-            prev[i] = i;
+            // Find the first subsequence which can't be extended by the label
+            int label = result.get(i), low = 0, high = fitness;
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+                if (tail.get(middle) < label)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            
+            tail.put(low, label);
+            if (low == fitness)
+                fitness++;
         }
-
-        for (int i = 1; i < result.size(); i++ )
-            for (int j = 0; j < i; j++ )
-                if ( result.get(i) > result.get(j) && best[i] < best[j]+1 ) 
-                {
-                    best[i] = best[j] + 1;
-                    prev[i] = j;   // prev[] is for backtracking the subsequence
-                }
-
-        for (int i = 0; i < result.size(); i++ )
-            if ( fitness < best[i] )
-                fitness = best[i];
             
         return fitness;        
     }
 
+    @Override
+    protected long optimalFitness(int complexity)
+    {
+        return (complexity+1)/2;
+    }
+
     @Override
     public boolean isOptimal(Program solution, int complexity) 
     {
         if (complexity == 0 || complexity == 1) return true;
-        
-        int solutionLength = (complexity+1)/2;
-        return solution.getCachedFitness().compareTo((Comparable)solutionLength) == 0;
+        return solution.getLongFitness() == optimum(complexity);
     }
     
 }
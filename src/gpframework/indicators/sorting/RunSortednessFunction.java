@@ -25,7 +25,9 @@
 
 package gpframework.indicators.sorting;
 
+import gpframework.indicators.PhenotypeBatch;
 import gpframework.program.Program;
+import java.nio.IntBuffer;
 import java.util.List;
 
 /**
@@ -43,39 +45,119 @@ public class RunSortednessFunction extends SortednessFunction
     {
         super(FunctionType.MINIMIZATION);
         this.n = n;
+        tabulateOptimum();
     }
     
     @Override
-    public Comparable evaluate(Program solution) {
+    public ValueType getValueType()
+    {
+        return ValueType.INTEGER;
+    }
+    
+    @Override
+    public Comparable evaluate(Program solution)
+    {
+        return (int) evaluateLong(solution);
+    }
+    
+    @Override
+    public long evaluateLong(Program solution) {
         
-        List<Integer> result = normalize(solution);    
+        IntBuffer result = purged(solution);
 
-        if(result.isEmpty())
+        if(result.limit() == 0)
             return getN()+1;
-        if(result.size() == 1)
+        if(result.limit() == 1)
             return getN();
         
         int fitness = 1;
 
-        for (int i = 0; i<result.size()-1; i++) {
+        for (int i = 0; i<result.limit()-1; i++) {
             if (result.get(i) > result.get(i+1))
                 fitness++;
         }
         
-        fitness += getN() - result.size();
+        fitness += getN() - result.limit();
         
         return fitness;
     }
 
     @Override
-    public boolean isOptimal(Program solution, int complexity) 
-    {        
-        if (complexity == 0 || complexity == 1) return true;
+    public long[] evaluateBatchLong(List<Program> solutions)
+    {
+        PhenotypeBatch batch = purgedBatch(solutions);
+        int[] labels = batch.getLabels();
+        long[] fitness = new long[batch.size()];
         
-        int solutionLength = (complexity+1)/2;
-        int optimalFitness = 1 + (getN() - solutionLength); 
+        for (int lane = 0; lane < fitness.length; lane++)
+        {
+            int offset = batch.getOffset(lane), length = batch.getLength(lane);
+            
+            if (length == 0)
+            {
+                fitness[lane] = getN()+1;
+                continue;
+            }
+            
+            // Branch-free count of descents between neighbours
+            int descents = 0;
+            for (int i = offset; i < offset+length-1; i++)
+                descents += labels[i] > labels[i+1] ? 1 : 0;
+            
+            fitness[lane] = 1 + descents + getN() - length;
+        }
         
-        return solution.getCachedFitness().compareTo((Comparable)optimalFitness) == 0;
+        return fitness;
+    }
+
+    @Override
+    protected long insertion(long fitness, int[] shorter, int[] longer, int position)
+    {
+        return fitness + difference(longer, position);
+    }
+
+    @Override
+    protected long removal(long fitness, int[] shorter, int[] longer, int position)
+    {
+        return fitness - difference(longer, position);
+    }
+    
+    /**
+     * Difference of fitness between two sequences, differing by one inserted label.
+     * Fitness is 1 + (descents) + (missing elements), also for sequences shorter 
+     * than 2, so only the descents around the label and one missing element change.
+     * 
+     * @param longer sequence with the label
+     * @param position position of the label in the longer sequence
+     * @return fitness of the longer sequence minus fitness of the shorter one
+     */
+    private int difference(int[] longer, int position)
+    {
+        int difference = -1;
+        boolean hasPrevious = position > 0, hasNext = position < longer.length - 1;
+        
+        if (hasPrevious && longer[position-1] > longer[position])
+            difference++;
+        if (hasNext && longer[position] > longer[position+1])
+            difference++;
+        if (hasPrevious && hasNext && longer[position-1] > longer[position+1])
+            difference--;
+        
+        return difference;
+    }
+
+    @Override
+    protected long optimalFitness(int complexity)
+    {
+        int solutionLength = (complexity+1)/2;
+        return 1 + (getN() - solutionLength);
+    }
+
+    @Override
+    public boolean isOptimal(Program solution, int complexity) 
+    {
+        if (complexity == 0 || complexity == 1) return true;
+        return solution.getLongFitness() == optimum(complexity);
     }
     
 }
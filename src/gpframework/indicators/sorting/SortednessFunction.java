@@ -25,17 +25,34 @@
 
 package gpframework.indicators.sorting;
 
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.indicators.DeltaFitnessFunction;
 import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.OffHeapIntBuffer;
+import gpframework.indicators.PhenotypeBatch;
+import gpframework.indicators.order.SignedLabelTable;
 import gpframework.program.Element;
 import gpframework.program.Program;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Superclass for SORTING fitness functions.
  */
-public abstract class SortednessFunction extends FitnessFunction 
+public abstract class SortednessFunction extends FitnessFunction implements DeltaFitnessFunction
 {
+    /**
+     * Labels already encountered while purging a sequence of labels.
+     */
+    protected SignedLabelTable seen;
+    
+    /**
+     * Off-heap Fenwick tree counting labels by value, all zeros between uses.
+     */
+    protected OffHeapIntBuffer counts;
+    
     /**
      * Constructor.
      * 
@@ -65,4 +82,331 @@ public abstract class SortednessFunction extends FitnessFunction
         
         return purged;
     }
+    
+    @Override
+    public int[] phenotype(Program solution)
+    {
+        return purge(solution.getLabels());
+    }
+    
+    /**
+     * Generic fallback of the primitive variants, which box the fitness.
+     */
+    @Override
+    public Comparable evaluateDelta(Program solution, Comparable parentFitness, MutationEvent event)
+    {
+        switch (getValueType())
+        {
+            case INTEGER:
+            case LONG:
+                long fitness = evaluateDeltaLong(solution, ((Number) parentFitness).longValue(), event);
+                return fitness == NO_DELTA ? null : boxed(fitness);
+            case DOUBLE:
+                double value = evaluateDeltaDouble(solution, ((Number) parentFitness).doubleValue(), event);
+                return Double.isNaN(value) ? null : Double.valueOf(value);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Purges both the labels produced by the mutated program and the ones of
+     * its parent. If the purged sequences are equal the fitness is unchanged,
+     * if they differ by a single inserted (or removed) label the subclass can
+     * update the fitness through insertion() (or removal()).
+     */
+    @Override
+    public long evaluateDeltaLong(Program solution, long parentFitness, MutationEvent event)
+    {
+        int[][] purged = purgedSequences(solution, event);
+        if (purged == null)
+            return NO_DELTA;
+        
+        int[] current = purged[0], previous = purged[1];
+        if (Arrays.equals(current, previous))
+            return parentFitness;
+        
+        if (current.length == previous.length + 1)
+        {
+            int position = insertionPoint(previous, current);
+            if (position >= 0)
+                return insertion(parentFitness, previous, current, position);
+        }
+        
+        if (current.length + 1 == previous.length)
+        {
+            int position = insertionPoint(current, previous);
+            if (position >= 0)
+                return removal(parentFitness, current, previous, position);
+        }
+        
+        // e.g. the first occurrence of a label moved
+        return NO_DELTA;
+    }
+    
+    /**
+     * Like evaluateDeltaLong(), for DOUBLE fitness values.
+     */
+    @Override
+    public double evaluateDeltaDouble(Program solution, double parentFitness, MutationEvent event)
+    {
+        int[][] purged = purgedSequences(solution, event);
+        if (purged == null)
+            return Double.NaN;
+        
+        int[] current = purged[0], previous = purged[1];
+        if (Arrays.equals(current, previous))
+            return parentFitness;
+        
+        if (current.length == previous.length + 1)
+        {
+            int position = insertionPoint(previous, current);
+            if (position >= 0)
+                return insertion(parentFitness, previous, current, position);
+        }
+        
+        if (current.length + 1 == previous.length)
+        {
+            int position = insertionPoint(current, previous);
+            if (position >= 0)
+                return removal(parentFitness, current, previous, position);
+        }
+        
+        return Double.NaN;
+    }
+    
+    /**
+     * Purges the labels produced by a mutated program and the ones of its parent.
+     * 
+     * @param solution mutated program
+     * @param event effect of the mutation on the labels
+     * @return the purged labels of the program and of its parent, null in
+     *         large scale mode (purging the parent would copy the whole 
+     *         sequence on the heap)
+     */
+    private int[][] purgedSequences(Program solution, MutationEvent event)
+    {
+        if (largeScale)
+            return null;
+        
+        int[] labels = solution.getLabels();
+        return new int[][] { purge(labels), purge(event.revert(labels)) };
+    }
+    
+    /**
+     * Computes the fitness of a purged sequence from the fitness of the same 
+     * sequence without one of its labels. Unsupported by default.
+     * 
+     * @param fitness fitness of the shorter sequence
+     * @param shorter purged sequence without the label
+     * @param longer purged sequence with the label
+     * @param position position of the label in the longer sequence
+     * @return the fitness of the longer sequence, NO_DELTA if unsupported
+     */
+    protected long insertion(long fitness, int[] shorter, int[] longer, int position)
+    {
+        return NO_DELTA;
+    }
+    
+    /**
+     * Computes the fitness of a purged sequence from the fitness of the same 
+     * sequence with one more label. Unsupported by default.
+     * 
+     * @param fitness fitness of the longer sequence
+     * @param shorter purged sequence without the label
+     * @param longer purged sequence with the label
+     * @param position position of the label in the longer sequence
+     * @return the fitness of the shorter sequence, NO_DELTA if unsupported
+     */
+    protected long removal(long fitness, int[] shorter, int[] longer, int position)
+    {
+        return NO_DELTA;
+    }
+    
+    /**
+     * Like insertion(long, ...), for DOUBLE fitness values.
+     * 
+     * @param fitness fitness of the shorter sequence
+     * @param shorter purged sequence without the label
+     * @param longer purged sequence with the label
+     * @param position position of the label in the longer sequence
+     * @return the fitness of the longer sequence, NaN if unsupported
+     */
+    protected double insertion(double fitness, int[] shorter, int[] longer, int position)
+    {
+        return Double.NaN;
+    }
+    
+    /**
+     * Like removal(long, ...), for DOUBLE fitness values.
+     * 
+     * @param fitness fitness of the longer sequence
+     * @param shorter purged sequence without the label
+     * @param longer purged sequence with the label
+     * @param position position of the label in the longer sequence
+     * @return the fitness of the shorter sequence, NaN if unsupported
+     */
+    protected double removal(double fitness, int[] shorter, int[] longer, int position)
+    {
+        return Double.NaN;
+    }
+    
+    /**
+     * Removes duplicates from a sequence of labels, keeping first occurrences.
+     * 
+     * @param labels sequence of labels
+     * @return sequence of unique labels in order
+     */
+    protected int[] purge(int[] labels)
+    {
+        resetSeen();
+        
+        int[] purged = new int[labels.length];
+        int size = 0;
+        
+        for (int label : labels)
+        {
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                purged[size++] = label;
+            }
+        }
+        
+        return Arrays.copyOf(purged, size);
+    }
+    
+    /**
+     * Purged sequence of labels produced by a solution, read by the kernels of
+     * the subclasses: in large scale mode it is purged in place in the off-heap
+     * label buffer, otherwise the cached phenotype is wrapped (and must not be
+     * modified).
+     * 
+     * @param solution solution to evaluate
+     * @return the purged labels, from position zero to the limit
+     */
+    protected IntBuffer purged(Program solution)
+    {
+        if (!largeScale)
+            return IntBuffer.wrap(cachedPhenotype(solution));
+        
+        IntBuffer labels = collectOffHeap(solution);
+        resetSeen();
+        
+        int size = 0;
+        for (int i = 0; i < labels.limit(); i++)
+        {
+            int label = labels.get(i);
+            if (!seen.isSeen(label))
+            {
+                seen.mark(label);
+                labels.put(size++, label);
+            }
+        }
+        
+        labels.limit(size);
+        return labels;
+    }
+    
+    /**
+     * In large scale mode, the purged sequence in the off-heap label buffer.
+     */
+    @Override
+    protected IntBuffer phenotypeBuffer(Program solution)
+    {
+        return purged(solution);
+    }
+    
+    /**
+     * Retrieves the Fenwick tree counting labels, large enough for the labels
+     * of a purged sequence. Counted labels must be removed after use.
+     * 
+     * @param purged purged sequence of labels
+     * @return the tree, with all counts set to zero
+     */
+    protected IntBuffer counts(IntBuffer purged)
+    {
+        int range = n;
+        for (int i = 0; i < purged.limit(); i++)
+            range = Math.max(range, purged.get(i) + 1);
+        
+        if (counts == null)
+            counts = new OffHeapIntBuffer(n + 1);
+        return counts.get(range + 1);
+    }
+    
+    /**
+     * Updates the count of a label in a Fenwick tree.
+     * 
+     * @param counts Fenwick tree
+     * @param label non-negative label to count
+     * @param delta change of the count of the label
+     */
+    protected static void count(IntBuffer counts, int label, int delta)
+    {
+        for (int i = label + 1; i < counts.limit(); i += i & -i)
+            counts.put(i, counts.get(i) + delta);
+    }
+    
+    /**
+     * Counts the labels smaller than a given one in a Fenwick tree.
+     * 
+     * @param counts Fenwick tree
+     * @param label non-negative label
+     * @return the number of counted labels smaller than label
+     */
+    protected static int countBelow(IntBuffer counts, int label)
+    {
+        int below = 0;
+        for (int i = label; i > 0; i -= i & -i)
+            below += counts.get(i);
+        return below;
+    }
+    
+    /**
+     * Flattens the labels produced by a batch of programs, removing duplicates
+     * from each lane.
+     * 
+     * @param solutions programs to flatten
+     * @return batch of purged sequences of labels
+     */
+    protected PhenotypeBatch purgedBatch(List<Program> solutions)
+    {
+        resetSeen();
+        
+        PhenotypeBatch batch = new PhenotypeBatch(solutions);
+        batch.keepFirstOccurrences(seen);
+        return batch;
+    }
+    
+    /**
+     * Allocates the table of seen labels, or empties it.
+     */
+    protected void resetSeen()
+    {
+        if (seen == null)
+            seen = new SignedLabelTable(n);
+        else
+            seen.reset();
+    }
+    
+    /**
+     * Checks if a sequence is obtained by inserting one label in another one.
+     * 
+     * @param shorter sequence without the label
+     * @param longer sequence with the label, one element longer
+     * @return the position of the inserted label, -1 if the sequences differ otherwise
+     */
+    protected static int insertionPoint(int[] shorter, int[] longer)
+    {
+        int position = 0;
+        while (position < shorter.length && shorter[position] == longer[position])
+            position++;
+        
+        for (int i = position; i < shorter.length; i++)
+            if (shorter[i] != longer[i+1])
+                return -1;
+        
+        return position;
+    }
 }
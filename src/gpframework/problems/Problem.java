@@ -28,12 +28,15 @@ package gpframework.problems;
 import gpframework.common.Configurable;
 import gpframework.common.exceptions.ArityException;
 import gpframework.indicators.FitnessFunction;
+import gpframework.indicators.WeightedFitnessFunction;
 import gpframework.program.*;
+import gpframework.program.ordermajority.OMElementFactory;
 
 /**
  * This class represents a problem instance. Ideally the fitness function and the
  * program factory are sufficient to determine a problem instance (for the problems
- * addressed).
+ * addressed). The parameter largeScale enables the off-heap evaluation mode of 
+ * the fitness function, for very large n.
  */
 public class Problem extends Configurable
 {
@@ -57,6 +60,10 @@ public class Problem extends Configurable
     {
         this.programFactory = programFactory;
         this.fitnessFunction = fitnessFunction;
+        
+        // Share the weights generated with the terminals
+        if (fitnessFunction instanceof WeightedFitnessFunction && programFactory.getTerminalFactory() instanceof OMElementFactory)
+            ((WeightedFitnessFunction) fitnessFunction).setWeightTable(((OMElementFactory) programFactory.getTerminalFactory()).getWeightTable());
     }
     
     /**
@@ -28,6 +28,7 @@ package gpframework.program;
 import gpframework.algorithms.components.Mutation;
 import gpframework.common.Utils;
 import gpframework.common.exceptions.ArityException;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -108,7 +109,7 @@ public abstract class Function extends Term
         for (Term d : descendants)
             if (d != null)
                 ts.addAll(d.getTerminals());
-        Collections.shuffle(ts, Utils.random);
+        Collections.shuffle(ts, Utils.random());
         return ts;
     }
 
@@ -120,7 +121,7 @@ public abstract class Function extends Term
         for(Term d : descendants)
             if (d != null)
                 fs.addAll(d.getFunctions());
-        Collections.shuffle(fs, Utils.random);
+        Collections.shuffle(fs, Utils.random());
         return fs;
     }
 
@@ -203,4 +204,30 @@ public abstract class Function extends Term
         
         return length;
     }
+    
+    @Override
+    public int leafCount()
+    {
+        int leaves = 0;
+        for(Term d : descendants)
+            leaves += d.leafCount();
+        
+        return leaves;
+    }
+    
+    @Override
+    public int collectLabels(int[] labels, int offset)
+    {
+        for(Term d : descendants)
+            offset = d.collectLabels(labels, offset);
+        
+        return offset;
+    }
+    
+    @Override
+    public void collectLabels(IntBuffer labels)
+    {
+        for(Term d : descendants)
+            d.collectLabels(labels);
+    }
 }
@@ -26,6 +26,7 @@
 package gpframework.program;
 
 import gpframework.algorithms.components.Mutation;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 
 /**
@@ -75,4 +76,21 @@ public class NullElement extends Element
     {
         return 0;
     }
+    
+    @Override
+    public int leafCount()
+    {
+        return 0;
+    }
+    
+    @Override
+    public int collectLabels(int[] labels, int offset)
+    {
+        return offset;
+    }
+    
+    @Override
+    public void collectLabels(IntBuffer labels)
+    {
+    }
 }
@@ -26,7 +26,10 @@
 package gpframework.program;
 
 import gpframework.algorithms.components.Mutation;
+import gpframework.algorithms.components.MutationEvent;
+import gpframework.indicators.FitnessFunction.ValueType;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -45,10 +48,72 @@ public class Program implements Comparable, Serializable
     protected Integer complexity;
     
     /**
-     * Last observed fitness of this program.
+     * Last observed fitness of this program (boxed lazily if the fitness was
+     * set as a primitive value).
      */
     protected Comparable cachedFitness;
     
+    /**
+     * Type of the last observed fitness, null if the program is not evaluated.
+     */
+    protected ValueType fitnessType;
+    
+    /**
+     * Last observed fitness, if of type INTEGER or LONG.
+     */
+    protected long longFitness;
+    
+    /**
+     * Last observed fitness, if of type DOUBLE.
+     */
+    protected double doubleFitness;
+    
+    /**
+     * Normalized phenotype of this program (see FitnessFunction.phenotype()),
+     * null if not computed since the last mutation. Shared with copies, must
+     * not be modified.
+     */
+    protected int[] phenotype;
+    
+    /**
+     * Hash of the normalized phenotype of this program (see 
+     * FitnessFunction.phenotypeHash()), valid if hasPhenotypeHash is set.
+     */
+    protected long phenotypeHash;
+    
+    /**
+     * Whether the hash of the phenotype has been computed since the last mutation.
+     */
+    protected boolean hasPhenotypeHash;
+    
+    /**
+     * Fitness of the program before the mutations since the last evaluation,
+     * if of type OBJECT (boxed lazily otherwise).
+     */
+    protected Comparable parentFitness;
+    
+    /**
+     * Type of the fitness of the program before the mutations since the last
+     * evaluation, null if unknown.
+     */
+    protected ValueType parentFitnessType;
+    
+    /**
+     * Fitness before the mutations since the last evaluation, if of type INTEGER or LONG.
+     */
+    protected long parentLongFitness;
+    
+    /**
+     * Fitness before the mutations since the last evaluation, if of type DOUBLE.
+     */
+    protected double parentDoubleFitness;
+    
+    /**
+     * Mutation events since the last evaluation, null if some mutation could
+     * not describe its effect (or the parent fitness is unknown).
+     */
+    protected List<MutationEvent> pendingEvents;
+    
     /**
      * Constructor.
      * 
@@ -75,6 +140,18 @@ public class Program implements Comparable, Serializable
         }
         
         this.cachedFitness = other.cachedFitness;
+        this.fitnessType = other.fitnessType;
+        this.longFitness = other.longFitness;
+        this.doubleFitness = other.doubleFitness;
+        this.phenotype = other.phenotype;
+        this.phenotypeHash = other.phenotypeHash;
+        this.hasPhenotypeHash = other.hasPhenotypeHash;
+        this.parentFitness = other.parentFitness;
+        this.parentFitnessType = other.parentFitnessType;
+        this.parentLongFitness = other.parentLongFitness;
+        this.parentDoubleFitness = other.parentDoubleFitness;
+        if (other.pendingEvents != null)
+            this.pendingEvents = new ArrayList<MutationEvent>(other.pendingEvents);
     }
     
     /**
@@ -94,10 +171,222 @@ public class Program implements Comparable, Serializable
      */
     public void applyMutation(Mutation m) 
     {
+        // Start tracking mutation events from the last evaluated version
+        if (hasCachedFitness())
+        {
+            parentFitness = cachedFitness;
+            parentFitnessType = fitnessType;
+            parentLongFitness = longFitness;
+            parentDoubleFitness = doubleFitness;
+            pendingEvents = new ArrayList<MutationEvent>();
+        }
+        
+        int recorded = pendingEvents == null ? 0 : pendingEvents.size();
         m.apply(this);
-        setCachedFitness(null);
+        
+        // Stop tracking if the mutation didn't describe its effect
+        if (pendingEvents != null && pendingEvents.size() == recorded)
+            forgetParent();
+        
+        cachedFitness = null;
+        fitnessType = null;
+        phenotype = null;
+        hasPhenotypeHash = false;
         complexity = null;
     }
+    
+    /**
+     * Records the effect of a mutation which is being applied to this program.
+     * 
+     * @param event the effect of the mutation on the produced labels
+     */
+    public void recordEvent(MutationEvent event)
+    {
+        if (pendingEvents != null)
+            pendingEvents.add(event);
+    }
+    
+    /**
+     * Gets the fitness of the program before the mutations applied since
+     * the last evaluation (boxed on demand, see getParentLongFitness() and
+     * getParentDoubleFitness() for primitive values).
+     * 
+     * @return the parent fitness, null if unknown
+     */
+    public Comparable getParentFitness()
+    {
+        if (parentFitness == null && parentFitnessType != null)
+        {
+            switch (parentFitnessType)
+            {
+                case INTEGER:
+                    parentFitness = (int) parentLongFitness;
+                    break;
+                case LONG:
+                    parentFitness = parentLongFitness;
+                    break;
+                case DOUBLE:
+                    parentFitness = parentDoubleFitness;
+                    break;
+            }
+        }
+        
+        return parentFitness;
+    }
+    
+    /**
+     * Gets the type of the fitness of the program before the mutations
+     * applied since the last evaluation.
+     * 
+     * @return the type of the parent fitness, null if unknown
+     */
+    public ValueType getParentFitnessType()
+    {
+        return parentFitnessType;
+    }
+    
+    /**
+     * Gets the parent fitness, if of type INTEGER or LONG.
+     * 
+     * @return the parent fitness as a primitive long
+     */
+    public long getParentLongFitness()
+    {
+        return parentLongFitness;
+    }
+    
+    /**
+     * Gets the parent fitness, if of type DOUBLE.
+     * 
+     * @return the parent fitness as a primitive double
+     */
+    public double getParentDoubleFitness()
+    {
+        return parentDoubleFitness;
+    }
+    
+    /**
+     * Sets the cached fitness of the program to the parent fitness, without
+     * boxing it, e.g. when the mutations didn't change the produced labels.
+     */
+    public void inheritParentFitness()
+    {
+        switch (parentFitnessType)
+        {
+            case INTEGER:
+            case LONG:
+                setCachedFitness(parentLongFitness, parentFitnessType);
+                break;
+            case DOUBLE:
+                setCachedFitness(parentDoubleFitness);
+                break;
+            default:
+                setCachedFitness(parentFitness);
+        }
+    }
+    
+    /**
+     * Stops tracking the mutations from the last evaluated version.
+     */
+    private void forgetParent()
+    {
+        parentFitness = null;
+        parentFitnessType = null;
+        pendingEvents = null;
+    }
+    
+    /**
+     * Gets the mutation events applied since the last evaluation.
+     * 
+     * @return the list of events, null if unknown
+     */
+    public List<MutationEvent> getPendingEvents()
+    {
+        return pendingEvents;
+    }
+    
+    /**
+     * Tells if the labels produced by the program are known to be the same as
+     * at its last evaluation, i.e. if none of the mutations applied since then
+     * changed them (e.g. a deletion on an empty program, or the replacement of
+     * a label with the same one), so that its fitness is the parent fitness.
+     * 
+     * @return true if the parent fitness is known and the labels are unchanged
+     */
+    public boolean hasUnchangedLabels()
+    {
+        if (parentFitnessType == null || pendingEvents == null)
+            return false;
+        
+        for (MutationEvent e : pendingEvents)
+            if (e.changesLabels())
+                return false;
+        
+        return true;
+    }
+    
+    /**
+     * Executes the program into a primitive array of labels.
+     * 
+     * @return the labels produced by the program, in order
+     */
+    public int[] getLabels()
+    {
+        int[] labels = new int[root.leafCount()];
+        root.collectLabels(labels, 0);
+        return labels;
+    }
+
+    /**
+     * Gets the cached normalized phenotype of the program.
+     * 
+     * @return the phenotype, null if not computed since the last mutation
+     */
+    public int[] getPhenotype()
+    {
+        return phenotype;
+    }
+    
+    /**
+     * Caches the normalized phenotype of the program.
+     * 
+     * @param phenotype the phenotype to cache (must not be modified afterwards)
+     */
+    public void setPhenotype(int[] phenotype)
+    {
+        this.phenotype = phenotype;
+    }
+    
+    /**
+     * Tells if the hash of the phenotype is cached.
+     * 
+     * @return true if computed since the last mutation
+     */
+    public boolean hasPhenotypeHash()
+    {
+        return hasPhenotypeHash;
+    }
+    
+    /**
+     * Gets the cached hash of the phenotype, see hasPhenotypeHash().
+     * 
+     * @return the hash of the phenotype
+     */
+    public long getPhenotypeHash()
+    {
+        return phenotypeHash;
+    }
+    
+    /**
+     * Caches the hash of the phenotype of the program.
+     * 
+     * @param phenotypeHash the hash of the phenotype
+     */
+    public void setPhenotypeHash(long phenotypeHash)
+    {
+        this.phenotypeHash = phenotypeHash;
+        this.hasPhenotypeHash = true;
+    }
 
     /**
      * Gets the root term.
@@ -139,6 +428,20 @@ public class Program implements Comparable, Serializable
         return root.getTerminals().get(0);
     }
     
+    /**
+     * Get the leftmost terminal of the tree, without visiting the whole tree 
+     * (and without consuming random numbers).
+     * 
+     * @return the first terminal of the program
+     */
+    public Terminal getFirstTerminal()
+    {
+        Term t = root;
+        while (t instanceof Function)
+            t = ((Function) t).getDescendant(0);
+        return (Terminal) t;
+    }
+    
     /**
      * Gets the program's terms.
      * 
@@ -193,9 +496,27 @@ public class Program implements Comparable, Serializable
     /**
      * Get the cached fitness of the program.
      * 
-     * @return the fitness
+     * @return the fitness, null if the program is not evaluated
      */
     public Comparable getCachedFitness() {
+        
+        // Box primitive fitness values on demand
+        if (cachedFitness == null && fitnessType != null)
+        {
+            switch (fitnessType)
+            {
+                case INTEGER:
+                    cachedFitness = (int) longFitness;
+                    break;
+                case LONG:
+                    cachedFitness = longFitness;
+                    break;
+                case DOUBLE:
+                    cachedFitness = doubleFitness;
+                    break;
+            }
+        }
+        
         return cachedFitness;
     }
 
@@ -206,6 +527,102 @@ public class Program implements Comparable, Serializable
      */
     public void setCachedFitness(Comparable fitness) {
         this.cachedFitness = fitness;
+        
+        // Keep numbers unboxed as well, for fast comparisons
+        if (fitness == null)
+            fitnessType = null;
+        else if (fitness instanceof Integer || fitness instanceof Long)
+        {
+            fitnessType = fitness instanceof Integer ? ValueType.INTEGER : ValueType.LONG;
+            longFitness = ((Number) fitness).longValue();
+        }
+        else if (fitness instanceof Double)
+        {
+            fitnessType = ValueType.DOUBLE;
+            doubleFitness = (Double) fitness;
+        }
+        else
+            fitnessType = ValueType.OBJECT;
+        
+        // Events are relative to the last evaluated version
+        forgetParent();
+    }
+    
+    /**
+     * Sets the cached fitness of the program to an integral value.
+     * 
+     * @param fitness the fitness to set
+     * @param type INTEGER or LONG, the type to use when boxing the fitness
+     */
+    public void setCachedFitness(long fitness, ValueType type)
+    {
+        this.cachedFitness = null;
+        this.fitnessType = type;
+        this.longFitness = fitness;
+        
+        forgetParent();
+    }
+    
+    /**
+     * Sets the cached fitness of the program to a real value.
+     * 
+     * @param fitness the fitness to set
+     */
+    public void setCachedFitness(double fitness)
+    {
+        this.cachedFitness = null;
+        this.fitnessType = ValueType.DOUBLE;
+        this.doubleFitness = fitness;
+        
+        forgetParent();
+    }
+    
+    /**
+     * Tells if the program has been evaluated since its last mutation.
+     * 
+     * @return true if the program has a cached fitness
+     */
+    public boolean hasCachedFitness()
+    {
+        return fitnessType != null;
+    }
+    
+    /**
+     * Tells if the cached fitness is available as a primitive long.
+     * 
+     * @return true if the cached fitness is of type INTEGER or LONG
+     */
+    public boolean hasLongFitness()
+    {
+        return fitnessType == ValueType.INTEGER || fitnessType == ValueType.LONG;
+    }
+    
+    /**
+     * Get the cached fitness of the program, see hasLongFitness().
+     * 
+     * @return the fitness as a primitive long
+     * @throws IllegalStateException if the program has no cached INTEGER or 
+     *         LONG fitness, e.g. if it has been mutated since its evaluation
+     */
+    public long getLongFitness()
+    {
+        if (!hasLongFitness())
+            throw new IllegalStateException("Program has no cached integral fitness, it must be evaluated first");
+        return longFitness;
+    }
+    
+    /**
+     * Get the cached fitness of the program, if of type DOUBLE.
+     * 
+     * @return the fitness as a primitive double
+     * @throws IllegalStateException if the program has no cached DOUBLE 
+     *         fitness, e.g. if it has been mutated since its evaluation
+     */
+    public double getDoubleFitness()
+    {
+        if (fitnessType != ValueType.DOUBLE)
+            throw new IllegalStateException("Program has no cached real fitness, it must be evaluated first");
+        return doubleFitness;
     }
 
     @Override
@@ -213,10 +630,16 @@ public class Program implements Comparable, Serializable
         
         Program po = (Program)t;
         
-        if (po.getCachedFitness() == null)
+        if (!po.hasCachedFitness())
             return -1;
-        else
-            return getCachedFitness().compareTo(po.getCachedFitness());
+        
+        // Compare primitive fitness values without unboxing
+        if (hasLongFitness() && po.hasLongFitness())
+            return longFitness < po.longFitness ? -1 : (longFitness == po.longFitness ? 0 : 1);
+        if (fitnessType == ValueType.DOUBLE && po.fitnessType == ValueType.DOUBLE)
+            return Double.compare(doubleFitness, po.doubleFitness);
+        
+        return getCachedFitness().compareTo(po.getCachedFitness());
         
     }
     
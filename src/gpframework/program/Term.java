@@ -27,9 +27,11 @@ package gpframework.program;
 
 import gpframework.algorithms.components.Mutation;
 import gpframework.common.Utils;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class represents any subtree of a program, be it a terminal or a join.
@@ -40,7 +42,17 @@ public abstract class Term implements Cloneable
     protected Object factory;
     
     /** Node ordinal */
-    protected static Integer ordinal = 0;
+    protected static AtomicInteger ordinal = new AtomicInteger();
+    
+    /** Node ordinals of the current run, inherited by the threads it creates */
+    protected static InheritableThreadLocal<AtomicInteger> ordinals = new InheritableThreadLocal<AtomicInteger>()
+    {
+        @Override
+        protected AtomicInteger initialValue()
+        {
+            return ordinal;
+        }
+    };
     
     /** Id of this node */
     protected Integer ID;
@@ -55,7 +67,21 @@ public abstract class Term implements Cloneable
     
     public Term()
     {
-        ID = Term.ordinal++;
+        ID = Term.ordinals.get().getAndIncrement();
+    }
+    
+    /**
+     * Sets the node ordinals of the current thread, and of the threads it
+     * creates from then on, e.g. to isolate concurrent runs.
+     * 
+     * @param ordinals counter of the node IDs, null to use the shared one
+     */
+    public static void setOrdinals(AtomicInteger ordinals)
+    {
+        if (ordinals == null)
+            Term.ordinals.remove();
+        else
+            Term.ordinals.set(ordinals);
     }
     
     /**
@@ -132,26 +158,26 @@ public abstract class Term implements Cloneable
         List<Term> nodes = new ArrayList<Term>();
         nodes.addAll(getTerminals());
         nodes.addAll(getFunctions());
-        Collections.shuffle(nodes, Utils.random);
+        Collections.shuffle(nodes, Utils.random());
         return nodes;
     }
     
     public Term getRandomTerm()
     {
         List<Term> terms = getTerms();
-        return terms.get(Utils.random.nextInt(terms.size()));
+        return terms.get(Utils.random().nextInt(terms.size()));
     }
 
     public Function getRandomFunction()
     {
         List<Function> function = getFunctions();
-        return function.get(Utils.random.nextInt(function.size()));
+        return function.get(Utils.random().nextInt(function.size()));
     }
         
     public Terminal getRandomTerminal()
     {
         List<Terminal> terminals = getTerminals();
-        return terminals.get(Utils.random.nextInt(terminals.size()));
+        return terminals.get(Utils.random().nextInt(terminals.size()));
     }
     
     /**
@@ -202,6 +228,48 @@ public abstract class Term implements Cloneable
      * @return the complexity of this subprogram
      */
     public abstract int complexity();
+    
+    /**
+     * Number of terminals (i.e. labels produced) of this subprogram.
+     * 
+     * @return the number of leaves of this subprogram
+     */
+    public abstract int leafCount();
+    
+    /**
+     * Writes the labels produced by this subprogram, in order, into a buffer.
+     * 
+     * @param labels buffer to fill
+     * @param offset position of the first label of this subprogram
+     * @return position following the last label of this subprogram
+     */
+    public abstract int collectLabels(int[] labels, int offset);
+    
+    /**
+     * Appends the labels produced by this subprogram, in order, to a buffer
+     * (e.g. an off-heap one).
+     * 
+     * @param labels buffer to fill, from its current position
+     */
+    public abstract void collectLabels(IntBuffer labels);
+    
+    /**
+     * Position of the first label of this subprogram in the output of the 
+     * whole program, i.e. the number of leaves preceding this term.
+     * 
+     * @return the number of leaves on the left of this term
+     */
+    public int leafOffset()
+    {
+        int offset = 0;
+        
+        // Go up the tree summing the leaves of the left siblings
+        for (Term t = this; t.getParent() != null; t = t.getParent())
+            for (int i = 0; i < t.getParentIndex(); i++)
+                offset += t.getParent().getDescendant(i).leafCount();
+        
+        return offset;
+    }
 
     /**
      * @return the factory
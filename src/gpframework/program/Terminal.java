@@ -27,6 +27,7 @@ package gpframework.program;
 
 import gpframework.algorithms.components.Mutation;
 import gpframework.common.Utils;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -55,7 +56,7 @@ public abstract class Terminal extends Term
     {
         List<Terminal> ts = new ArrayList<Terminal>();
         ts.add(this);
-        Collections.shuffle(ts, Utils.random);
+        Collections.shuffle(ts, Utils.random());
 
         return ts;
     }
@@ -82,6 +83,25 @@ public abstract class Terminal extends Term
     {
         return 1;
     }
+    
+    @Override
+    public int leafCount()
+    {
+        return 1;
+    }
+    
+    @Override
+    public int collectLabels(int[] labels, int offset)
+    {
+        labels[offset] = label;
+        return offset + 1;
+    }
+    
+    @Override
+    public void collectLabels(IntBuffer labels)
+    {
+        labels.put(label);
+    }
 
     /**
      * @return the label
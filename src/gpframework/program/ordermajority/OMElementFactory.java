@@ -31,7 +31,6 @@ import gpframework.program.NullElement;
 import gpframework.program.Terminal;
 import gpframework.program.sorting.SortingElementFactory;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -40,34 +39,24 @@ import java.util.List;
  */
 public class OMElementFactory extends SortingElementFactory
 {
-    protected List<Integer> weights = new ArrayList<Integer>();
-    
-    protected List<Integer> fitnessBySize;
+    /**
+     * Weights of the variables.
+     */
+    protected WeightTable weights;
     
     public OMElementFactory(int n)
     {
         super(n);
         
         // Generate n random weights
-        for(int i = 0; i < n; i++)
-            weights.add(Utils.random.nextInt(1000000));
-        
-        // Produce list of fitnesses by size
-        fitnessBySize = new ArrayList<Integer>(weights);
-        Collections.sort(fitnessBySize);
-        Collections.reverse(fitnessBySize);
-        fitnessBySize.add(0,0);
-        
-        // Compute incremental sum of weights
-        for(int i = 1; i < fitnessBySize.size(); i++)
-            fitnessBySize.set(i, fitnessBySize.get(i) + fitnessBySize.get(i-1));
+        weights = WeightTable.random(n, 1000000, Utils.random());
     }
 
     @Override
     public Terminal generate() {
-        int label = Utils.random.nextInt(getNumLabels())+1;   
-        int weight = weights.get(label-1);
-        if (Utils.random.nextBoolean())
+        int label = Utils.random().nextInt(getNumLabels())+1;   
+        int weight = weights.getWeight(label);
+        if (Utils.random().nextBoolean())
             label = -label;
         
         Element nu = new Element(label, weight);
@@ -82,12 +71,12 @@ public class OMElementFactory extends SortingElementFactory
         for(int i = 1; i < getNumLabels()+1; i++)
         {
             // Add element
-            Element nu = new Element(i, weights.get(i-1));
+            Element nu = new Element(i, weights.getWeight(i));
             nu.setFactory(this);
             terminals.add(nu);
             
             // Add element's negation
-            nu = new Element(-i, weights.get(i-1));
+            nu = new Element(-i, weights.getWeight(i));
             nu.setFactory(this);
             terminals.add(nu);
         }
@@ -111,9 +100,19 @@ public class OMElementFactory extends SortingElementFactory
     }
 
     /**
-     * @return the fitnessBySize
+     * Retrieves the weight of the variable of a label.
+     * 
+     * @param label a label or its negation
+     * @return the weight of the label
+     */
+    public int getWeight(int label) {
+        return weights.getWeight(label);
+    }
+
+    /**
+     * @return the weights of the variables, shared with the fitness function
      */
-    public Integer getFitnessBySize(int size) {
-        return fitnessBySize.get(size);
+    public WeightTable getWeightTable() {
+        return weights;
     }
 }
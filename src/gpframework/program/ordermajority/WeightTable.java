@@ -0,0 +1,152 @@
+/*  Copyright (c) 2012 Tommaso Urli, Markus Wagner
+ * 
+ *  Tommaso Urli    tommaso.urli@uniud.it   University of Udine
+ *  Markus Wagner   wagner@acrocon.com      University of Adelaide
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining
+ *  a copy of this software and associated documentation files (the
+ *  "Software"), to deal in the Software without restriction, including
+ *  without limitation the rights to use, copy, modify, merge, publish,
+ *  distribute, sublicense, and/or sell copies of the Software, and to
+ *  permit persons to whom the Software is furnished to do so, subject to
+ *  the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ *  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ *  OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ *  WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. 
+ */
+
+package gpframework.program.ordermajority;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Immutable weights of the variables of a weighted ORDER or MAJORITY problem,
+ * with the best achievable fitness for each number of variables (the sum of
+ * the largest weights). Sums are kept as longs, so that large problems don't
+ * overflow int fitness values.
+ */
+public class WeightTable 
+{
+    /**
+     * Weight of each variable, indexed by absolute label minus one.
+     */
+    private final int[] weights;
+    
+    /**
+     * Sum of the k largest weights, for k from 0 to n.
+     */
+    private final long[] optimum;
+    
+    /**
+     * Constructor.
+     * 
+     * @param weights non-negative weight of each variable, from label 1 to n
+     */
+    public WeightTable(int[] weights)
+    {
+        this.weights = weights.clone();
+        
+        int[] sorted = weights.clone();
+        Arrays.sort(sorted);
+        
+        optimum = new long[weights.length+1];
+        for (int k = 1; k <= weights.length; k++)
+        {
+            if (sorted[weights.length-k] < 0)
+                throw new IllegalArgumentException("Weights must be non-negative");
+            optimum[k] = optimum[k-1] + sorted[weights.length-k];
+        }
+    }
+    
+    /**
+     * Generates uniformly distributed random weights.
+     * 
+     * @param n number of variables
+     * @param range weights are drawn from 0 (included) to range (excluded)
+     * @param random source of randomness
+     * @return a table of random weights
+     */
+    public static WeightTable random(int n, int range, Random random)
+    {
+        int[] weights = new int[n];
+        for (int i = 0; i < n; i++)
+            weights[i] = random.nextInt(range);
+        
+        return new WeightTable(weights);
+    }
+    
+    /**
+     * Retrieves the weight of the variable of a label.
+     * 
+     * @param label a label or its negation
+     * @return the weight of the variable
+     */
+    public int getWeight(int label)
+    {
+        return weights[Math.abs(label)-1];
+    }
+    
+    /**
+     * Retrieves the best fitness achievable with a given number of variables.
+     * 
+     * @param size number of variables (capped to n)
+     * @return the sum of the size largest weights
+     */
+    public long getOptimum(int size)
+    {
+        return optimum[Math.min(size, weights.length)];
+    }
+    
+    /**
+     * Tells if every sum of weights fits into an int.
+     * 
+     * @return true if the sum of all the weights is at most Integer.MAX_VALUE
+     */
+    public boolean fitsInInteger()
+    {
+        return optimum[weights.length] <= Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Computes a 64-bit fingerprint of the weights (FNV-1a), e.g. to check
+     * that data computed for a table is used with the same weights.
+     * 
+     * @return the fingerprint of the weights
+     */
+    public long fingerprint()
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int weight : weights)
+        {
+            for (int shift = 0; shift < 32; shift += 8)
+            {
+                hash ^= (weight >>> shift) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+    
+    /**
+     * @return the number of variables
+     */
+    public int size()
+    {
+        return weights.length;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(weights);
+    }
+}
@@ -51,7 +51,7 @@ public class SortingElementFactory extends TerminalFactory {
     @Override
     public Terminal generate() 
     {
-        int label = Utils.random.nextInt(getNumLabels());
+        int label = Utils.random().nextInt(getNumLabels());
         return new Element(label);
     }
 